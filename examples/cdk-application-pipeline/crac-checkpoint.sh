@@ -0,0 +1,37 @@
+#!/bin/sh
+# Build an image of the fruit API that restores from a CRaC checkpoint taken after warm-up.
+#
+#   mvn -Pcrac -DskipTests package
+#   ./crac-checkpoint.sh fruit-api:crac [docker run options]
+#
+# Configuration is read before the checkpoint and restored with it, so pass the settings of the
+# environment the image will run in, such as the datasource, as docker run options. Checkpoint and
+# restore need CRIU, which runs privileged here and needs CAP_CHECKPOINT_RESTORE where the image runs.
+set -eu
+
+IMAGE=${1:-fruit-api:crac}
+[ $# -gt 0 ] && shift
+PORT=${CRAC_WARMUP_PORT:-18080}
+REQUESTS=${CRAC_WARMUP_REQUESTS:-2000}
+
+docker build --build-arg STARTUP_MODE=crac --target build --tag "$IMAGE-checkpoint" .
+CONTAINER=$(docker run --detach --privileged --publish "$PORT:8080" "$@" "$IMAGE-checkpoint")
+trap 'docker rm --force "$CONTAINER" > /dev/null' EXIT
+
+until curl --fail --silent "localhost:$PORT/actuator/health" | grep -q UP; do
+  sleep 1
+done
+
+# run the API code paths so the checkpoint holds their classes and compiled code
+i=0
+while [ "$i" -lt "$REQUESTS" ]; do
+  curl --silent --output /dev/null "localhost:$PORT/api/fruits"
+  curl --silent --output /dev/null "localhost:$PORT/api/fruits/1"
+  i=$((i + 1))
+done
+
+# the JVM exits once the checkpoint is written to /app/crac
+docker exec "$CONTAINER" jcmd /app/fruit-api.jar JDK.checkpoint
+docker wait "$CONTAINER" > /dev/null
+docker commit --change 'ENTRYPOINT ["java","-XX:CRaCRestoreFrom=/app/crac"]' "$CONTAINER" "$IMAGE"
+echo "Built $IMAGE"
@@ -52,6 +52,10 @@ export class DeploymentStack extends Stack {
     });
 
     const dbName = 'fruits';
+    // Connector/J options: honor fetch sizes with a server-side cursor, so the
+    // unpaginated export streams rows instead of loading the whole table, and
+    // send each import batch as multi-row inserts rather than one per fruit
+    const dbUrlOptions = ['useCursorFetch=true', 'rewriteBatchedStatements=true'].join('&');
     const dbSecret = new DatabaseSecret(this, 'AuroraSecret', {
       username: 'fruitapi',
       secretName: `${appName}-DB`,
@@ -128,7 +132,7 @@ export class DeploymentStack extends Stack {
             ),
           },
           environment: {
-            SPRING_DATASOURCE_URL: `jdbc:mysql://${db.clusterEndpoint.hostname}:${db.clusterEndpoint.port}/${dbName}`,
+            SPRING_DATASOURCE_URL: `jdbc:mysql://${db.clusterEndpoint.hostname}:${db.clusterEndpoint.port}/${dbName}?${dbUrlOptions}`,
             APPCONFIG_AGENT_APPLICATION:
               this.node.tryGetContext('workloadName'),
             APPCONFIG_AGENT_ENVIRONMENT:
@@ -151,7 +155,7 @@ export class DeploymentStack extends Stack {
           {
             name: 'getAll',
             path: '/api/fruits',
-            jmesPath: 'length(@)',
+            jmesPath: 'length(items)',
             expectedValue: 5,
           },
         ],
@@ -15,8 +15,12 @@ export interface JMeterTestProps {
   cacheBucket?: Bucket;
 }
 
+// Baseline of the performance test, kept in the build cache so each run is compared with the first one
+const baselineDir = '/root/.jmeter-baseline';
+
 export class JMeterTest extends CodeBuildStep {
   constructor(id: string, props: JMeterTestProps) {
+    const baseline = props.cacheBucket ? ` -Djmeter.baseline=${baselineDir}/fruit-api-baseline.properties` : '';
     const stepProps = {
       envFromCfnOutputs: {
         ENDPOINT: props.endpoint,
@@ -39,10 +43,10 @@ export class JMeterTest extends CodeBuildStep {
               java: (props.javaRuntime || 'corretto17'),
             },
           },
-          build: { commands: [`mvn \${MAVEN_ARGS} compile jmeter:jmeter jmeter:results -Djmeter.endpoint=\${ENDPOINT} -Djmeter.threads=${props.threads} -Djmeter.duration=${props.duration} -Djmeter.throughput=${props.throughput}`] },
+          build: { commands: [`mvn \${MAVEN_ARGS} test-compile jmeter:jmeter jmeter:results exec:java@jmeter-slo exec:java@jmeter-baseline -Djmeter.endpoint=\${ENDPOINT} -Djmeter.threads=${props.threads} -Djmeter.duration=${props.duration} -Djmeter.throughput=${props.throughput}${baseline}`] },
         },
         cache: props.cacheBucket ? {
-          paths: ['/root/.m2/**/*'],
+          paths: ['/root/.m2/**/*', `${baselineDir}/**/*`],
         } : undefined,
         version: '0.2',
       }),
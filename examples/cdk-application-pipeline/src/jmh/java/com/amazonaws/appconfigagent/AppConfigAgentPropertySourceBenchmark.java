@@ -0,0 +1,100 @@
+package com.amazonaws.appconfigagent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Cost of resolving names through {@link AppConfigAgentPropertySource#getProperty(String)},
+ * and of the fetch from a local agent that a snapshot miss costs.
+ * Run with the GC profiler to see allocation per lookup; the miss paths should allocate nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppConfigAgentPropertySourceBenchmark {
+
+  private HttpServer agent;
+
+  private AppConfigAgentPropertySource source;
+
+  @Setup
+  public void setUp() throws IOException {
+    byte[] body = "{\"classification\": {\"enabled\": true, \"color\": \"red\"}}".getBytes(StandardCharsets.UTF_8);
+    agent = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    agent.createContext("/", exchange -> {
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    agent.start();
+    source = new AppConfigAgentPropertySource("appconfig", "localhost", agent.getAddress().getPort(), "fruit-api", "benchmark", 0);
+    source.getProperty("appconfig.features.classification");
+  }
+
+  @TearDown
+  public void tearDown() {
+    source.close();
+    agent.stop(0);
+  }
+
+  /**
+   * Name owned by another property source, e.g. a placeholder nobody else could resolve.
+   */
+  @Benchmark
+  public Object otherPrefix() {
+    return source.getProperty("spring.jpa.open-in-view");
+  }
+
+  /**
+   * Name with the prefix that can never resolve to a flag.
+   */
+  @Benchmark
+  public Object malformedName() {
+    return source.getProperty("appconfig.features");
+  }
+
+  @Benchmark
+  public Object flag() {
+    return source.getProperty("appconfig.features.classification");
+  }
+
+  @Benchmark
+  public Object attribute() {
+    return source.getProperty("appconfig.features.classification.color");
+  }
+
+  @Benchmark
+  public Object missingFlagDefault() {
+    return source.getProperty("appconfig.features.missing");
+  }
+
+  /**
+   * Request to the agent and parse of its response, as on a snapshot miss.
+   */
+  @Benchmark
+  public Map<String, Object> agentFetch() throws IOException {
+    return source.refresh("features");
+  }
+}
@@ -0,0 +1,84 @@
+package com.amazonaws.dpri.fruits;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+/**
+ * Full round trip of the read endpoints through MockMvc: dispatch, ETag
+ * check, repository and cache, mapping and JSON rendering, without the
+ * network and Tomcat. Servlet filters are not applied. With the response
+ * cache, repeated reads skip mapping and rendering.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+// the whole web stack takes a while to be compiled
+@Warmup(iterations = 10, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FruitApiBenchmark {
+
+  @Param({"true", "false"})
+  private boolean classification;
+
+  @Param({"true", "false"})
+  private boolean responseCache;
+
+  private ConfigurableApplicationContext context;
+
+  private MockMvc mockMvc;
+
+  @Setup(Level.Trial)
+  public void start() {
+    context = new SpringApplicationBuilder(FruitApplication.class)
+        .properties(
+            "server.port=0",
+            "logging.level.root=WARN",
+            "appconfig-agent.enabled=false",
+            "appconfig.features.classification=" + classification,
+            "fruits.response-cache.enabled=" + responseCache)
+        .run();
+    mockMvc = MockMvcBuilders.webAppContextSetup((ServletWebServerApplicationContext) context).build();
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() {
+    context.close();
+  }
+
+  @Benchmark
+  public String page() throws Exception {
+    return mockMvc.perform(get("/api/fruits")).andReturn().getResponse().getContentAsString();
+  }
+
+  @Benchmark
+  public String one() throws Exception {
+    return mockMvc.perform(get("/api/fruits/1")).andReturn().getResponse().getContentAsString();
+  }
+
+  @Benchmark
+  public int notModified() throws Exception {
+    String etag = classification ? "\"0-c\"" : "\"0\"";
+    return mockMvc.perform(get("/api/fruits/1").header("If-None-Match", etag)).andReturn().getResponse().getStatus();
+  }
+}
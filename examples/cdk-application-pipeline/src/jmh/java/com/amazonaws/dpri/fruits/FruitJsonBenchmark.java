@@ -0,0 +1,72 @@
+package com.amazonaws.dpri.fruits;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Cost of serializing a list of fruit DTOs with an ObjectMapper configured
+ * like the application's, straight to a stream as the message converters
+ * do, and into a byte array.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FruitJsonBenchmark {
+
+  @Param({"1", "100", "1000", "10000"})
+  private int size;
+
+  private ObjectWriter writer;
+
+  private List<FruitDTO> fruits;
+
+  @Setup
+  public void setUp() {
+    // spring.jackson.default-property-inclusion: non_null
+    ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().serializationInclusion(JsonInclude.Include.NON_NULL).build();
+    writer = objectMapper.writerFor(new TypeReference<List<FruitDTO>>() { });
+    fruits = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      FruitDTO fruit = new FruitDTO();
+      fruit.setId((long) i);
+      fruit.setName("Fruit " + i);
+      // every other fruit without classification, as when the flag is off
+      fruit.setClassification(i % 2 == 0 ? FruitClassification.values()[i % FruitClassification.values().length] : null);
+      fruits.add(fruit);
+    }
+  }
+
+  @Benchmark
+  public void writeToStream() throws IOException {
+    writer.writeValue(OutputStream.nullOutputStream(), fruits);
+  }
+
+  @Benchmark
+  public byte[] writeToBytes() throws IOException {
+    return writer.writeValueAsBytes(fruits);
+  }
+}
@@ -0,0 +1,79 @@
+package com.amazonaws.dpri.fruits;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import com.amazonaws.appconfigagent.FeatureFlags;
+
+/**
+ * Cost of mapping one fruit between its entity, view and DTO, with the
+ * classification flag passed in as the controllers do, and read from the
+ * environment on every call as the single-argument methods do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FruitMapperBenchmark {
+
+  private FruitMapper mapper;
+
+  private Fruit entity;
+
+  private FruitView view;
+
+  private FruitDTO dto;
+
+  @Setup
+  public void setUp() {
+    StandardEnvironment environment = new StandardEnvironment();
+    environment.getPropertySources().addFirst(new MapPropertySource("flags",
+        Map.of("appconfig.features.classification.enabled", "true")));
+    mapper = new FruitMapper(new FeatureFlags(environment, "appconfig"));
+    entity = new Fruit("Apple", FruitClassification.pome);
+    entity.setId(1L);
+    entity.setVersion(0L);
+    view = new FruitView(1L, "Apple", FruitClassification.pome, 0L);
+    dto = mapper.toDto(entity, true);
+  }
+
+  @Benchmark
+  public FruitDTO entityToDto() {
+    return mapper.toDto(entity, true);
+  }
+
+  @Benchmark
+  public FruitDTO entityToDtoReadingFlag() {
+    return mapper.toDto(entity);
+  }
+
+  @Benchmark
+  public FruitDTO viewToDto() {
+    return mapper.toDto(view, true);
+  }
+
+  @Benchmark
+  public Fruit dtoToEntity() {
+    return mapper.toEntity(dto, true);
+  }
+
+  @Benchmark
+  public Fruit dtoToEntityReadingFlag() {
+    return mapper.toEntity(dto);
+  }
+}
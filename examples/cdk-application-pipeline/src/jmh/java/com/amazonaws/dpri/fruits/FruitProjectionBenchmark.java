@@ -0,0 +1,118 @@
+package com.amazonaws.dpri.fruits;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Cost of reading a list of fruits and mapping it to DTOs, as managed
+ * entities in a read-write transaction (how the GET endpoints used to read)
+ * and as FruitView projections in a read-only transaction. Run with the gc
+ * profiler of the jmh profile and compare 'gc.alloc.rate.norm', the bytes
+ * allocated per list:
+ * mvn -Pjmh test-compile exec:exec@jmh -Djmh.benchmarks=FruitProjectionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FruitProjectionBenchmark {
+
+  @Param({"100", "1000", "10000"})
+  private int rows;
+
+  private ConfigurableApplicationContext context;
+
+  private FruitRepository repository;
+
+  private FruitMapper mapper;
+
+  private EntityManager entityManager;
+
+  private TransactionTemplate readWrite;
+
+  private TransactionTemplate readOnly;
+
+  @Setup(Level.Trial)
+  public void start() {
+    context = new SpringApplicationBuilder(FruitApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties(
+            // measure the queries, not the cache in front of them
+            "spring.cache.type=none",
+            "logging.level.root=WARN",
+            "appconfig-agent.enabled=false",
+            "appconfig.features.classification=true")
+        .run();
+    repository = context.getBean(FruitRepository.class);
+    mapper = context.getBean(FruitMapper.class);
+    entityManager = context.getBean(EntityManager.class);
+    PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+    readWrite = new TransactionTemplate(transactionManager);
+    readOnly = new TransactionTemplate(transactionManager);
+    readOnly.setReadOnly(true);
+
+    List<Object[]> fruits = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      fruits.add(new Object[] {"Benchmark fruit " + i, FruitClassification.values()[i % FruitClassification.values().length].name()});
+    }
+    context.getBean(JdbcTemplate.class).batchUpdate("insert into fruit (name, classification, version) values (?, ?, 0)", fruits);
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() {
+    context.close();
+  }
+
+  /**
+   * Entities loaded into the persistence context, each with a snapshot
+   * that the flush at commit compares against, then copied into DTOs.
+   */
+  @Benchmark
+  public List<FruitDTO> entities() {
+    return readWrite.execute(status -> entityManager
+        .createQuery("select f from Fruit f where f.id > :after order by f.id", Fruit.class)
+        .setParameter("after", 0L)
+        .setMaxResults(rows)
+        .getResultStream()
+        .map(fruit -> mapper.toDto(fruit, true))
+        .collect(Collectors.toList()));
+  }
+
+  /**
+   * Projections built by the query, never attached to the persistence
+   * context, then copied into DTOs.
+   */
+  @Benchmark
+  public List<FruitDTO> projections() {
+    return readOnly.execute(status -> repository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(rows)).stream()
+        .map(fruit -> mapper.toDto(fruit, true))
+        .collect(Collectors.toList()));
+  }
+}
@@ -0,0 +1,160 @@
+package com.amazonaws.dpri.fruits;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of the fruit API in each way it can be packaged: the time from
+ * starting the process to /actuator/health answering UP, and the resident
+ * memory of the process at that moment. Every mode is started
+ * 'benchmark.startup.runs' times on an in-memory database and the medians are
+ * printed, with the output of the last run in target/startup-&lt;mode&gt;.log.
+ *
+ * Modes are selected with 'benchmark.startup.modes' and run the build output
+ * of their profile, or the command in 'benchmark.startup.&lt;mode&gt;':
+ * <ul>
+ * <li>jvm: the Spring Boot jar, built by mvn package</li>
+ * <li>cds: the extracted jar with its AppCDS archive, built by mvn -Pcds package</li>
+ * <li>crac: a restore of the checkpoint in target/crac, made on a JDK with CRaC from the
+ * mvn -Pcrac package jar started with -XX:CRaCCheckpointTo=target/crac and checkpointed by
+ * jcmd target/fruit-api.jar JDK.checkpoint</li>
+ * <li>native: the native executable, built by mvn -Pnative package native:compile</li>
+ * </ul>
+ * mvn -Pjmh test-compile exec:exec@startup -Dbenchmark.startup.modes=jvm,cds,native
+ *
+ * A restored checkpoint keeps the arguments it was started with, so it is not given a
+ * port: start it with --server.port and --appconfig-agent.enabled=false before the
+ * checkpoint, and set that port in 'benchmark.startup.restore-port'.
+ *
+ * Resident memory is read from /proc, so it is only reported on Linux.
+ */
+public final class StartupBenchmark {
+
+  private static final Map<String, String> COMMANDS = Map.of(
+      "jvm", "java -jar target/fruit-api.jar",
+      "cds", "java -XX:SharedArchiveFile=target/cds/fruit-api.jsa -jar target/cds/fruit-api.jar",
+      "crac", "java -XX:CRaCRestoreFrom=target/crac",
+      "native", "target/fruit-api");
+
+  private static final int RUNS = Integer.getInteger("benchmark.startup.runs", 5);
+
+  private static final int RESTORE_PORT = Integer.getInteger("benchmark.startup.restore-port", 8080);
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(Long.getLong("benchmark.startup.timeout-seconds", 120));
+
+  private static final HttpClient CLIENT = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(100)).build();
+
+  private StartupBenchmark() {
+  }
+
+  public static void main(final String[] args) throws Exception {
+    List<String> modes = Arrays.asList(System.getProperty("benchmark.startup.modes", "jvm").split(","));
+    List<String> results = new ArrayList<>();
+    for (String mode : modes) {
+      String command = System.getProperty("benchmark.startup." + mode, COMMANDS.get(mode));
+      if (command == null) {
+        throw new IllegalArgumentException("No command for mode " + mode + ", set benchmark.startup." + mode);
+      }
+      long[] millis = new long[RUNS];
+      long[] rssKilobytes = new long[RUNS];
+      for (int run = 0; run < RUNS; run++) {
+        long[] result = start(mode, command);
+        millis[run] = result[0];
+        rssKilobytes[run] = result[1];
+        System.out.printf("%s run %d: UP after %d ms, RSS %s%n", mode, run + 1, millis[run], megabytes(rssKilobytes[run]));
+      }
+      results.add(String.format("%-8s %12d %10d %10d %14s", mode, median(millis),
+          Arrays.stream(millis).min().getAsLong(), Arrays.stream(millis).max().getAsLong(), megabytes(median(rssKilobytes))));
+    }
+    System.out.printf("%n%d runs per mode, time from process start to health UP%n", RUNS);
+    System.out.printf("%-8s %12s %10s %10s %14s%n", "mode", "median ms", "min ms", "max ms", "median RSS");
+    results.forEach(System.out::println);
+  }
+
+  /**
+   * Start the application once and stop it as soon as it is healthy.
+   * @return milliseconds to UP, and resident memory in kB then, or -1 when unknown
+   */
+  private static long[] start(final String mode, final String command) throws IOException, InterruptedException {
+    List<String> arguments = new ArrayList<>(Arrays.asList(command.trim().split("\\s+")));
+    int port = RESTORE_PORT;
+    if (!command.contains("-XX:CRaCRestoreFrom")) {
+      try (ServerSocket socket = new ServerSocket(0)) {
+        port = socket.getLocalPort();
+      }
+      arguments.add("--server.port=" + port);
+      arguments.add("--appconfig-agent.enabled=false");
+    }
+    File log = Path.of("target", "startup-" + mode + ".log").toFile();
+    HttpRequest health = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/health"))
+        .timeout(Duration.ofSeconds(1)).build();
+
+    long start = System.nanoTime();
+    Process process = new ProcessBuilder(arguments).redirectErrorStream(true).redirectOutput(log).start();
+    try {
+      while (System.nanoTime() - start < TIMEOUT.toNanos()) {
+        if (!process.isAlive()) {
+          throw new IllegalStateException(mode + " exited with " + process.exitValue() + ", see " + log);
+        }
+        if (isUp(health)) {
+          long millis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+          return new long[] {millis, residentKilobytes(process.pid())};
+        }
+        Thread.sleep(10);
+      }
+      throw new IllegalStateException(mode + " was not UP after " + TIMEOUT + ", see " + log);
+    } finally {
+      process.destroy();
+      if (!process.waitFor(30, TimeUnit.SECONDS)) {
+        process.destroyForcibly().waitFor();
+      }
+    }
+  }
+
+  private static boolean isUp(final HttpRequest health) throws InterruptedException {
+    try {
+      HttpResponse<String> response = CLIENT.send(health, HttpResponse.BodyHandlers.ofString());
+      return response.statusCode() == 200 && response.body().contains("\"UP\"");
+    } catch (IOException ex) {
+      // not listening yet
+      return false;
+    }
+  }
+
+  private static long residentKilobytes(final long pid) {
+    try {
+      for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(pid), "status"), StandardCharsets.UTF_8)) {
+        if (line.startsWith("VmRSS:")) {
+          return Long.parseLong(line.replaceAll("\\D", ""));
+        }
+      }
+    } catch (IOException ex) {
+      // not Linux
+    }
+    return -1;
+  }
+
+  private static long median(final long[] values) {
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+
+  private static String megabytes(final long kilobytes) {
+    return kilobytes < 0 ? "n/a" : String.format("%.1f MB", kilobytes / 1024.0);
+  }
+}
@@ -0,0 +1,280 @@
+package com.amazonaws.dpri.fruits;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.amazonaws.appconfigagent.AppConfigAgentInitializer;
+import com.sun.net.httpserver.HttpServer;
+
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * Closed-loop load test of GET /api/fruits/{id} against a database that takes
+ * 'benchmark.db-delay-millis' per statement, through a connection pool of
+ * 'benchmark.pool-size', first with Tomcat's platform thread pool and then with
+ * virtual threads. Prints throughput and latency percentiles
+ * for both modes, and every place a virtual thread pinned its carrier thread,
+ * as reported by the JFR 'jdk.VirtualThreadPinned' event.
+ *
+ * Needs a Java 21 runtime for the virtual thread run:
+ * mvn -Pjmh,java21 test-compile exec:exec@virtual-threads
+ */
+public final class VirtualThreadBenchmark {
+
+  private static final long DB_DELAY_MILLIS = Long.getLong("benchmark.db-delay-millis", 50);
+
+  private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 1000);
+
+  private static final int POOL_SIZE = Integer.getInteger("benchmark.pool-size", 10);
+
+  private static final Duration WARMUP = Duration.ofSeconds(Long.getLong("benchmark.warmup-seconds", 10));
+
+  private static final Duration DURATION = Duration.ofSeconds(Long.getLong("benchmark.duration-seconds", 30));
+
+  private VirtualThreadBenchmark() {
+  }
+
+  public static void main(final String[] args) throws Exception {
+    if (Runtime.version().feature() < 21) {
+      System.out.printf("Java %s has no virtual threads, the second run will use platform threads too%n", Runtime.version());
+    }
+    HttpServer agent = startAgent();
+    try {
+      Result platform = run(false, agent.getAddress().getPort());
+      Result virtual = run(true, agent.getAddress().getPort());
+      System.out.printf("%nDB delay %d ms, %d connections, %d concurrent clients, %d s measured%n",
+          DB_DELAY_MILLIS, POOL_SIZE, CONCURRENCY, DURATION.getSeconds());
+      System.out.printf("%-10s %12s %10s %10s %10s %10s %8s%n", "mode", "requests/s", "p50 ms", "p99 ms", "max ms", "errors", "pinned");
+      platform.print("platform");
+      virtual.print("virtual");
+      virtual.printPinning();
+    } finally {
+      agent.stop(0);
+    }
+  }
+
+  private static Result run(final boolean virtualThreads, final int agentPort) throws Exception {
+    ConfigurableApplicationContext context = new SpringApplicationBuilder(FruitApplication.class)
+        .initializers(new AppConfigAgentInitializer(),
+            ctx -> ctx.getBeanFactory().addBeanPostProcessor(new SlowDataSourcePostProcessor()))
+        .properties(
+            "server.port=0",
+            "spring.datasource.hikari.maximum-pool-size=" + POOL_SIZE,
+            // measure the threads queueing for connections, not the requests AimdConcurrencyLimit rejects
+            "fruits.concurrency-limit.enabled=false",
+            // the proxied pool no longer equals the one Liquibase migrated, keep Hibernate from recreating the schema
+            "spring.jpa.hibernate.ddl-auto=none",
+            "spring.cache.cache-names=fruit,fruitPages",
+            "spring.cache.caffeine.spec=maximumSize=10000,recordStats",
+            "logging.level.root=WARN",
+            "appconfig-agent.enabled=true",
+            "appconfig-agent.port=" + agentPort,
+            "appconfig-agent.environment=benchmark",
+            "appconfig-agent.snapshot-file=${java.io.tmpdir}/fruit-api-benchmark/appconfig-snapshot.json")
+        // an argument rather than a default property, so it wins over application.yml
+        .run("--spring.threads.virtual.enabled=" + virtualThreads);
+    SlowDataSourcePostProcessor.enabled = true;
+    Result result = new Result();
+    try (RecordingStream pinning = new RecordingStream()) {
+      pinning.enable("jdk.VirtualThreadPinned").withStackTrace().withThreshold(Duration.ZERO);
+      pinning.onEvent("jdk.VirtualThreadPinned", event -> result.pinned(event.getStackTrace()));
+      pinning.startAsync();
+      int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+      load(port, WARMUP, new Result());
+      load(port, DURATION, result);
+    } finally {
+      SlowDataSourcePostProcessor.enabled = false;
+      context.close();
+    }
+    return result;
+  }
+
+  /**
+   * Keep CONCURRENCY requests in flight until the duration is over.
+   */
+  private static void load(final int port, final Duration duration, final Result result) throws InterruptedException {
+    HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    long end = System.nanoTime() + duration.toNanos();
+    CountDownLatch done = new CountDownLatch(CONCURRENCY);
+    for (int i = 0; i < CONCURRENCY; i++) {
+      HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/fruits/" + (i % 5 + 1))).build();
+      send(client, request, end, result, done);
+    }
+    done.await();
+    result.elapsed(duration);
+  }
+
+  private static void send(final HttpClient client, final HttpRequest request, final long end, final Result result, final CountDownLatch done) {
+    if (System.nanoTime() > end) {
+      done.countDown();
+      return;
+    }
+    long start = System.nanoTime();
+    client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, ex) -> {
+      result.record(System.nanoTime() - start, ex == null && response.statusCode() == 200);
+      send(client, request, end, result, done);
+    });
+  }
+
+  private static HttpServer startAgent() throws IOException {
+    byte[] body = "{\"classification\": {\"enabled\": true}}".getBytes(StandardCharsets.UTF_8);
+    HttpServer agent = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    agent.createContext("/", exchange -> {
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    agent.start();
+    return agent;
+  }
+
+  /**
+   * Latencies in a fixed histogram of 1 ms buckets up to 10 s, plus pinning stacks.
+   */
+  private static final class Result {
+
+    private final AtomicLong[] buckets = new AtomicLong[10_000];
+
+    private final LongAdder errors = new LongAdder();
+
+    private final AtomicInteger pinnedEvents = new AtomicInteger();
+
+    private final Map<String, AtomicInteger> pinnedAt = new ConcurrentHashMap<>();
+
+    private long requests;
+
+    private Duration elapsed = Duration.ZERO;
+
+    Result() {
+      Arrays.setAll(buckets, i -> new AtomicLong());
+    }
+
+    void record(final long nanos, final boolean ok) {
+      if (!ok) {
+        errors.increment();
+      }
+      buckets[(int) Math.min(nanos / 1_000_000, buckets.length - 1)].incrementAndGet();
+    }
+
+    void elapsed(final Duration duration) {
+      elapsed = duration;
+      requests = Arrays.stream(buckets).mapToLong(AtomicLong::get).sum();
+    }
+
+    void pinned(final RecordedStackTrace stackTrace) {
+      pinnedEvents.incrementAndGet();
+      String where = "unknown";
+      if (stackTrace != null) {
+        // first frame outside the JDK is where the application or a library holds the monitor
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+          String type = frame.getMethod().getType().getName();
+          if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+            where = type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+            break;
+          }
+        }
+      }
+      pinnedAt.computeIfAbsent(where, key -> new AtomicInteger()).incrementAndGet();
+    }
+
+    long percentile(final double p) {
+      long target = (long) Math.ceil(requests * p);
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i].get();
+        if (seen >= target) {
+          return i + 1;
+        }
+      }
+      return buckets.length;
+    }
+
+    void print(final String mode) {
+      System.out.printf("%-10s %12.0f %10d %10d %10d %10d %8d%n", mode, requests / (double) elapsed.getSeconds(),
+          percentile(0.50), percentile(0.99), percentile(1.0), errors.sum(), pinnedEvents.get());
+    }
+
+    void printPinning() {
+      if (pinnedAt.isEmpty()) {
+        System.out.println("No virtual thread pinned its carrier thread");
+        return;
+      }
+      System.out.println("Virtual threads pinned their carrier thread at:");
+      pinnedAt.entrySet().stream()
+          .sorted((a, b) -> b.getValue().get() - a.getValue().get())
+          .forEach(e -> System.out.printf("  %6d  %s%n", e.getValue().get(), e.getKey()));
+    }
+  }
+
+  /**
+   * Wraps the pool so every statement prepared on a connection first waits
+   * for the configured delay, like a query on a slow or distant database.
+   * Only switched on once the application has started, so the Liquibase
+   * migrations run at full speed.
+   */
+  private static final class SlowDataSourcePostProcessor implements BeanPostProcessor {
+
+    private static volatile boolean enabled;
+
+    @Override
+    public Object postProcessAfterInitialization(final Object bean, final String beanName) {
+      if (!(bean instanceof DataSource)) {
+        return bean;
+      }
+      DataSource target = (DataSource) bean;
+      return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {DataSource.class},
+          delegate(target, (proxy, method, args) -> {
+            Object result = method.invoke(target, args);
+            return result instanceof Connection ? slow((Connection) result) : result;
+          }));
+    }
+
+    private static Connection slow(final Connection connection) {
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+          delegate(connection, (proxy, method, args) -> {
+            if (enabled && method.getName().startsWith("prepare")) {
+              Thread.sleep(DB_DELAY_MILLIS);
+            }
+            return method.invoke(connection, args);
+          }));
+    }
+
+    private static InvocationHandler delegate(final Object target, final InvocationHandler handler) {
+      return (proxy, method, args) -> {
+        try {
+          return handler.invoke(proxy, method, args);
+        } catch (InvocationTargetException ex) {
+          throw ex.getCause();
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package com.amazonaws.appconfigagent;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * HTTP client for the AppConfig agent with bounded latency. Every call is limited by a connect
+ * and a read timeout, and at most a fixed number of calls may be in flight at once; callers
+ * beyond that limit fail immediately instead of queueing behind a slow agent.
+ *
+ * Once bound to a {@link MeterRegistry}, every call is recorded in the 'appconfig.agent.fetch'
+ * timer and every failure in the 'appconfig.agent.errors' counter, tagged with the configuration
+ * and the outcome (success, timeout, rejected or error).
+ */
+public class AppConfigAgentClient implements MeterBinder {
+
+  public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofMillis(500);
+
+  public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(2);
+
+  public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+
+  private static final TypeReference<Map<String, Object>> CONFIG_TYPE = new TypeReference<Map<String, Object>>() {};
+
+  private static final Log logger = LogFactory.getLog(AppConfigAgentClient.class);
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  private final String baseUrl;
+
+  private final Duration readTimeout;
+
+  private final Semaphore permits;
+
+  private final HttpClient httpClient;
+
+  private final CompositeMeterRegistry registry = new CompositeMeterRegistry();
+
+  public AppConfigAgentClient(String host, int port, String application, String environment) {
+    this(host, port, application, environment, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, DEFAULT_MAX_CONCURRENT_REQUESTS);
+  }
+
+  public AppConfigAgentClient(String host, int port, String application, String environment, Duration connectTimeout, Duration readTimeout, int maxConcurrentRequests) {
+    this.baseUrl = String.format("http://%s:%d/applications/%s/environments/%s", host, port, application, environment);
+    this.readTimeout = readTimeout;
+    this.permits = new Semaphore(maxConcurrentRequests);
+    this.httpClient = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1)
+      .connectTimeout(connectTimeout)
+      .build();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry meterRegistry) {
+    registry.add(meterRegistry);
+  }
+
+  /**
+   * Base URL of the configurations of this application and environment in the agent.
+   */
+  public String getBaseUrl() {
+    return baseUrl;
+  }
+
+  /**
+   * Fetch a configuration, or a single flag of a feature flag configuration, from the agent.
+   * @throws java.net.http.HttpTimeoutException if the agent does not answer in time
+   * @throws BulkheadFullException if too many calls to the agent are already in flight
+   */
+  public Map<String, Object> fetch(String configurationName, Optional<String> flagName) throws IOException {
+    String configUrl = String.format("%s/configurations/%s", baseUrl, configurationName);
+    if(flagName.isPresent()) {
+      configUrl = String.format("%s?flag=%s", configUrl, flagName.get());
+    }
+    if(!permits.tryAcquire()) {
+      recordError(configurationName, "rejected");
+      throw new BulkheadFullException(configUrl);
+    }
+    long start = System.nanoTime();
+    String outcome = "error";
+    try {
+      logger.debug(String.format("Fetching AppConfig flag from '%s'", configUrl));
+      HttpRequest request = HttpRequest.newBuilder(URI.create(configUrl)).timeout(readTimeout).GET().build();
+      HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+      if(response.statusCode() != 200) {
+        throw new IOException(String.format("AppConfig agent returned status %d for '%s'", response.statusCode(), configUrl));
+      }
+      Map<String, Object> config = mapper.readValue(response.body(), CONFIG_TYPE);
+
+      if(logger.isDebugEnabled()) {
+        logger.debug(String.format("Got flag: %s", mapper.writeValueAsString(config)));
+      }
+
+      outcome = "success";
+      return config;
+    } catch(HttpTimeoutException ex) {
+      outcome = "timeout";
+      throw ex;
+    } catch(InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(String.format("Interrupted while fetching '%s'", configUrl));
+    } finally {
+      permits.release();
+      Timer.builder("appconfig.agent.fetch")
+        .description("Time to fetch a configuration from the AppConfig agent")
+        .tag("configuration", configurationName)
+        .tag("outcome", outcome)
+        .publishPercentileHistogram()
+        .register(registry)
+        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      if(!"success".equals(outcome)) {
+        recordError(configurationName, outcome);
+      }
+    }
+  }
+
+  private void recordError(String configurationName, String cause) {
+    Counter.builder("appconfig.agent.errors")
+      .description("Failed or rejected calls to the AppConfig agent")
+      .tag("configuration", configurationName)
+      .tag("cause", cause)
+      .register(registry)
+      .increment();
+  }
+
+  /**
+   * Thrown when the maximum number of concurrent calls to the agent is reached.
+   */
+  public static class BulkheadFullException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    BulkheadFullException(String configUrl) {
+      super(String.format("Too many concurrent requests to AppConfig agent, not fetching '%s'", configUrl));
+    }
+  }
+}
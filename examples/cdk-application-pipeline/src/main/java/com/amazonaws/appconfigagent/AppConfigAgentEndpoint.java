@@ -0,0 +1,46 @@
+package com.amazonaws.appconfigagent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.PropertySources;
+
+/**
+ * Actuator endpoint listing the AppConfig configurations held in memory and how fresh they are.
+ */
+@Endpoint(id = "appconfig")
+public class AppConfigAgentEndpoint {
+
+  private final PropertySources propertySources;
+
+  private final String propertySourceName;
+
+  public AppConfigAgentEndpoint(PropertySources propertySources, String propertySourceName) {
+    this.propertySources = propertySources;
+    this.propertySourceName = propertySourceName;
+  }
+
+  @ReadOperation
+  public Map<String, Object> configurations() {
+    Map<String, Object> result = new LinkedHashMap<>();
+    PropertySource<?> source = propertySources.get(propertySourceName);
+    if(!(source instanceof AppConfigAgentPropertySource)) {
+      return result;
+    }
+    AppConfigAgentPropertySource propertySource = (AppConfigAgentPropertySource)source;
+    Map<String, Object> configurations = new LinkedHashMap<>();
+    for(String configurationName : propertySource.getConfigurationNames()) {
+      Map<String, Object> configuration = new LinkedHashMap<>();
+      configuration.put("lastRefreshed", propertySource.getLastRefreshed(configurationName).map(Object::toString).orElse(null));
+      configuration.put("ageSeconds", propertySource.getSnapshotAge(configurationName).map(age -> age.toSeconds()).orElse(null));
+      configuration.put("stale", propertySource.isStale(configurationName));
+      configurations.put(configurationName, configuration);
+    }
+    result.put("agent", propertySource.getSource());
+    result.put("configurations", configurations);
+    return result;
+  }
+}
@@ -1,11 +1,14 @@
 package com.amazonaws.appconfigagent;
 
-import java.util.Optional;
+import java.io.File;
+import java.time.Duration;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.core.env.ConfigurableEnvironment;
 
 public class AppConfigAgentInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
@@ -21,24 +24,58 @@ public class AppConfigAgentInitializer implements ApplicationContextInitializer<
     String applicationName = environment.getProperty("appconfig-agent.application", environment.getProperty("spring.application.name", "defaultapp"));
     String environmentName = environment.getProperty("appconfig-agent.environment");
     String prefix = environment.getProperty("appconfig-agent.prefix", "appconfig");
-    AppConfigAgentPropertySource appConfigPropertySource = new AppConfigAgentPropertySource(prefix, host, port, applicationName, environmentName);
+    long refreshInterval = Long.parseLong(environment.getProperty("appconfig-agent.refresh-interval-seconds", String.valueOf(AppConfigAgentPropertySource.DEFAULT_REFRESH_INTERVAL_SECONDS)));
+    Duration connectTimeout = Duration.ofMillis(Long.parseLong(environment.getProperty("appconfig-agent.connect-timeout-millis", String.valueOf(AppConfigAgentClient.DEFAULT_CONNECT_TIMEOUT.toMillis()))));
+    Duration readTimeout = Duration.ofMillis(Long.parseLong(environment.getProperty("appconfig-agent.read-timeout-millis", String.valueOf(AppConfigAgentClient.DEFAULT_READ_TIMEOUT.toMillis()))));
+    int maxConcurrentRequests = Integer.parseInt(environment.getProperty("appconfig-agent.max-concurrent-requests", String.valueOf(AppConfigAgentClient.DEFAULT_MAX_CONCURRENT_REQUESTS)));
+    AppConfigAgentClient client = new AppConfigAgentClient(host, port, applicationName, environmentName, connectTimeout, readTimeout, maxConcurrentRequests);
+    AppConfigAgentPropertySource appConfigPropertySource = new AppConfigAgentPropertySource(prefix, client, refreshInterval);
+
+    // serve the configurations saved by the previous run until the agent answers
+    File snapshotFile = environment.getProperty("appconfig-agent.snapshot-file", File.class);
+    if(snapshotFile != null) {
+      appConfigPropertySource.restore(new AppConfigSnapshotFile(snapshotFile.toPath()));
+    }
 
     String logLevelConfiguration = environment.getProperty("appconfig-agent.log-level-from.configuration");
+    String logLevelAttribute = environment.getProperty("appconfig-agent.log-level-from.attribute", "logLevel");
     if(logLevelConfiguration != null) {
-      String attribute = environment.getProperty("appconfig-agent.log-level-from.attribute", "logLevel");
       try {
-        String logLevel = (String)appConfigPropertySource.getConfig(logLevelConfiguration, Optional.empty()).get(attribute);
-        if(logLevel != null) {
-          Logger root = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
-          if(root instanceof ch.qos.logback.classic.Logger) {
-            ((ch.qos.logback.classic.Logger)root).setLevel(ch.qos.logback.classic.Level.toLevel(logLevel));
-          }
-        }
+        applyLogLevel(appConfigPropertySource.getSnapshot(logLevelConfiguration), logLevelAttribute);
       } catch (Exception ex) {
         ex.printStackTrace();
       }
     }
 
+    // re-apply the log level and let beans rebind when a background refresh changes a configuration
+    appConfigPropertySource.setChangeListener(event -> {
+      if(event.getConfigurationName().equals(logLevelConfiguration)) {
+        applyLogLevel(event.getCurrent(), logLevelAttribute);
+      }
+      if(configurableApplicationContext.isActive()) {
+        configurableApplicationContext.publishEvent(event);
+      }
+    });
+
     environment.getPropertySources().addLast(appConfigPropertySource);
-  }  
-}
\ No newline at end of file
+    // expose to actuator as a meter binder and through the 'appconfig' endpoint
+    configurableApplicationContext.getBeanFactory().registerSingleton("appConfigAgentPropertySource", appConfigPropertySource);
+    configurableApplicationContext.getBeanFactory().registerSingleton("appConfigAgentEndpoint", new AppConfigAgentEndpoint(environment.getPropertySources(), prefix));
+    appConfigPropertySource.start();
+    configurableApplicationContext.addApplicationListener(event -> {
+      if(event instanceof ContextClosedEvent) {
+        appConfigPropertySource.close();
+      }
+    });
+  }
+
+  private static void applyLogLevel(Map<String, Object> configuration, String attribute) {
+    Object logLevel = configuration.get(attribute);
+    if(logLevel != null) {
+      Logger root = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+      if(root instanceof ch.qos.logback.classic.Logger) {
+        ((ch.qos.logback.classic.Logger)root).setLevel(ch.qos.logback.classic.Level.toLevel(logLevel.toString()));
+      }
+    }
+  }
+}
@@ -1,80 +1,407 @@
 package com.amazonaws.appconfigagent;
 
 import java.io.IOException;
-import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 import org.springframework.core.env.PropertySource;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 
-public class AppConfigAgentPropertySource extends PropertySource<String> {
+/**
+ * Resolve '<prefix>.<configuration>.<flag>[.<attribute>]' properties from in-memory snapshots
+ * of AppConfig configurations, kept up to date in the background through the AppConfig agent.
+ *
+ * Once bound to a {@link MeterRegistry}, snapshot lookups are counted in 'appconfig.snapshot.lookups'
+ * (result hit, or miss when the agent had to be called), and each configuration has gauges for
+ * 'appconfig.snapshot.age' and 'appconfig.snapshot.stale'. Agent calls are recorded by the client.
+ */
+public class AppConfigAgentPropertySource extends PropertySource<String> implements AutoCloseable, MeterBinder {
+
+  /**
+   * Default number of seconds between background refreshes of the configuration snapshots.
+   */
+  public static final long DEFAULT_REFRESH_INTERVAL_SECONDS = 30;
+
+  private static final int MAX_CACHED_KEYS = 1024;
+
+  private final AppConfigAgentClient client;
+
+  /**
+   * Last fetched content of each configuration, keyed by configuration name. Snapshots are
+   * immutable and replaced as a whole, so readers always see a consistent configuration.
+   */
+  private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+  /**
+   * Parsed property names, including names that can never match, bounded so that arbitrary
+   * lookups can't grow it without limit.
+   */
+  private final Map<String, PropertyKey> parsedKeys = new ConcurrentHashMap<>();
+
+  private final String namePrefix;
+
+  private final long refreshIntervalSeconds;
+
+  private ScheduledExecutorService scheduler;
+
+  private volatile Consumer<AppConfigChangedEvent> changeListener = event -> { };
+
+  private volatile AppConfigSnapshotFile snapshotFile;
+
+  /**
+   * Serializes writes of the snapshot file. A lock rather than a synchronized method, so a
+   * virtual thread doing a first fetch does not pin its carrier thread during file I/O.
+   */
+  private final ReentrantLock saveLock = new ReentrantLock();
+
+  /**
+   * Meters are registered here, and recorded in every registry this source is bound to.
+   */
+  private final CompositeMeterRegistry registry = new CompositeMeterRegistry();
+
+  private final Counter snapshotHits = lookupCounter("hit");
+
+  private final Counter snapshotMisses = lookupCounter("miss");
 
   public AppConfigAgentPropertySource(String prefix, String host, int port, String application, String environment) {
-    super(
-      prefix, 
-      String.format("http://%s:%d/applications/%s/environments/%s",
-        host, port, application, environment
-      )
-    );
+    this(prefix, host, port, application, environment, DEFAULT_REFRESH_INTERVAL_SECONDS);
+  }
+
+  public AppConfigAgentPropertySource(String prefix, String host, int port, String application, String environment, long refreshIntervalSeconds) {
+    this(prefix, new AppConfigAgentClient(host, port, application, environment), refreshIntervalSeconds);
+  }
+
+  public AppConfigAgentPropertySource(String prefix, AppConfigAgentClient client, long refreshIntervalSeconds) {
+    super(prefix, client.getBaseUrl());
+    this.client = client;
+    this.namePrefix = prefix + ".";
+    this.refreshIntervalSeconds = refreshIntervalSeconds;
     logger.info(String.format("Initialized AppConfig agent at '%s'", this.source));
   }
 
-	public Map<String, Object> getConfig(String configurationName, Optional<String> flagName) throws IOException {
-    URL configUrl = new URL(String.format("%s/configurations/%s", this.getSource(), configurationName));
-    if(flagName.isPresent()) {
-      configUrl = new URL(String.format("%s?flag=%s", configUrl, flagName.get()));
+  /**
+   * Start refreshing all known configurations in the background.
+   */
+  public synchronized void start() {
+    if(scheduler != null || refreshIntervalSeconds <= 0) {
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "appconfig-agent-refresh");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // reconcile configurations restored from the snapshot file with the agent straight away
+    long initialDelay = snapshots.isEmpty() ? refreshIntervalSeconds : 0;
+    scheduler.scheduleWithFixedDelay(this::refreshAll, initialDelay, refreshIntervalSeconds, TimeUnit.SECONDS);
+    logger.info(String.format("Refreshing AppConfig configurations every %d seconds", refreshIntervalSeconds));
+  }
+
+  /**
+   * Set the callback that receives an event whenever a refresh changes a configuration.
+   */
+  public void setChangeListener(Consumer<AppConfigChangedEvent> listener) {
+    this.changeListener = listener;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry meterRegistry) {
+    registry.add(meterRegistry);
+    client.bindTo(meterRegistry);
+  }
+
+  private Counter lookupCounter(String result) {
+    return Counter.builder("appconfig.snapshot.lookups")
+      .description("Lookups of AppConfig configuration snapshots")
+      .tag("result", result)
+      .register(registry);
+  }
+
+  private void registerGauges(String configurationName) {
+    Gauge.builder("appconfig.snapshot.age", this, source -> source.getSnapshotAge(configurationName).map(age -> age.toMillis() / 1000.0).orElse(Double.NaN))
+      .description("Time since the configuration was last fetched from the AppConfig agent")
+      .baseUnit("seconds")
+      .tag("configuration", configurationName)
+      .register(registry);
+    Gauge.builder("appconfig.snapshot.stale", this, source -> source.isStale(configurationName) ? 1 : 0)
+      .description("Whether the configuration is served from a stale snapshot")
+      .tag("configuration", configurationName)
+      .register(registry);
+  }
+
+  /**
+   * Serve the configurations saved in a snapshot file, marked as stale, until they are
+   * refreshed from the agent, and save every successfully refreshed configuration to it.
+   */
+  public void restore(AppConfigSnapshotFile file) {
+    file.load().forEach((configurationName, entry) -> {
+      if(entry.getContent() != null) {
+        snapshots.putIfAbsent(configurationName, new Snapshot(Collections.unmodifiableMap(entry.getContent()), entry.getRefreshedAt(), true));
+        registerGauges(configurationName);
+      }
+    });
+    this.snapshotFile = file;
+  }
+
+  /**
+   * Stop the background refresh.
+   */
+  @Override
+  public synchronized void close() {
+    if(scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
     }
-    logger.debug(String.format("Fetching AppConfig flag from '%s'", configUrl.toString()));
-    ObjectMapper mapper = new ObjectMapper();
-    Map<String, Object> config = mapper.readValue(configUrl, new TypeReference<Map<String, Object>>() {});
+  }
+
+	public Map<String, Object> getConfig(String configurationName, Optional<String> flagName) throws IOException {
+    return client.fetch(configurationName, flagName);
+  }
 
-    if(logger.isDebugEnabled()) {
-      logger.debug(String.format("Got flag: %s", mapper.writeValueAsString(config)));
+  /**
+   * Get the in-memory snapshot of a configuration, fetching it from the agent on first use.
+   * Once fetched, the configuration is kept up to date by the background refresh.
+   * If the first fetch fails, an empty snapshot is served until a background refresh
+   * succeeds, so only one caller ever waits on an unavailable agent.
+   */
+  public Map<String, Object> getSnapshot(String configurationName) throws IOException {
+    Snapshot snapshot = snapshots.get(configurationName);
+    if(snapshot != null) {
+      snapshotHits.increment();
+      return snapshot.content;
+    }
+    snapshotMisses.increment();
+    try {
+      return refresh(configurationName);
+    } catch(IOException ex) {
+      if(snapshots.putIfAbsent(configurationName, Snapshot.UNAVAILABLE) == null) {
+        registerGauges(configurationName);
+      }
+      throw ex;
     }
+  }
+
+  /**
+   * Names of all configurations currently held in memory.
+   */
+  public Set<String> getConfigurationNames() {
+    return new TreeSet<>(snapshots.keySet());
+  }
+
+  /**
+   * Whether the snapshot of a configuration is being served because the last attempt to
+   * refresh it from the agent failed.
+   */
+  public boolean isStale(String configurationName) {
+    Snapshot snapshot = snapshots.get(configurationName);
+    return snapshot != null && snapshot.stale;
+  }
+
+  /**
+   * When the snapshot of a configuration was last fetched successfully, or empty if it never was.
+   */
+  public Optional<Instant> getLastRefreshed(String configurationName) {
+    Snapshot snapshot = snapshots.get(configurationName);
+    return snapshot == null ? Optional.empty() : Optional.ofNullable(snapshot.refreshedAt);
+  }
 
+  /**
+   * Time since the snapshot of a configuration was last fetched successfully, or empty if it never was.
+   */
+  public Optional<Duration> getSnapshotAge(String configurationName) {
+    return getLastRefreshed(configurationName).map(refreshedAt -> Duration.between(refreshedAt, Instant.now()));
+  }
+
+  /**
+   * Fetch a configuration from the agent and replace its snapshot, notifying the change
+   * listener if the content differs from the previous snapshot. If the fetch fails, the
+   * previous snapshot is kept and marked as stale.
+   */
+  public Map<String, Object> refresh(String configurationName) throws IOException {
+    Map<String, Object> config;
+    try {
+      config = Collections.unmodifiableMap(getConfig(configurationName, Optional.empty()));
+    } catch(IOException ex) {
+      snapshots.computeIfPresent(configurationName, (name, snapshot) -> snapshot.markStale());
+      throw ex;
+    }
+    Snapshot previous = snapshots.put(configurationName, new Snapshot(config, Instant.now(), false));
+    boolean changed = previous != null && !previous.content.equals(config);
+    if(previous == null) {
+      registerGauges(configurationName);
+    }
+    if(previous == null || previous.stale || changed) {
+      save();
+    }
+    if(changed) {
+      AppConfigChangedEvent event = new AppConfigChangedEvent(this, configurationName, previous.content, config);
+      logger.info(String.format("AppConfig configuration %s changed: %s", configurationName, event.getChangedKeys()));
+      changeListener.accept(event);
+    }
     return config;
   }
 
+  private void save() {
+    AppConfigSnapshotFile file = snapshotFile;
+    if(file == null) {
+      return;
+    }
+    saveLock.lock();
+    try {
+      Map<String, AppConfigSnapshotFile.Entry> entries = new LinkedHashMap<>();
+      snapshots.forEach((configurationName, snapshot) -> {
+        if(snapshot.refreshedAt != null) {
+          entries.put(configurationName, new AppConfigSnapshotFile.Entry(snapshot.refreshedAt, snapshot.content));
+        }
+      });
+      file.save(entries);
+    } finally {
+      saveLock.unlock();
+    }
+  }
+
+  private void refreshAll() {
+    for(String configurationName : snapshots.keySet()) {
+      try {
+        refresh(configurationName);
+      } catch(IOException | RuntimeException ex) {
+        logger.warn(String.format("Unable to refresh configuration %s from AppConfig agent, serving stale value: %s", configurationName, ex.getMessage()));
+      }
+    }
+  }
+
 	public Object getProperty(String name) {
-    String[] nameWithDefault = name.split(":", 2);
-    String[] parts = nameWithDefault[0].split("\\.", 4);
-    if(parts.length < 3) {
+    // other property sources fall through to this one for every unresolved name, so reject
+    // names outside the prefix before doing any parsing
+    if(!name.startsWith(namePrefix)) {
       return null;
     }
-    if(!parts[0].equals(this.getName())) {
+    PropertyKey key = parsedKeys.get(name);
+    if(key == null) {
+      key = PropertyKey.parse(name, namePrefix.length());
+      if(parsedKeys.size() < MAX_CACHED_KEYS) {
+        parsedKeys.putIfAbsent(name, key);
+      }
+    }
+    if(key == PropertyKey.INVALID) {
       return null;
     }
     try {
-      Map<String, Object> flag = getConfig(parts[1], Optional.of(parts[2]));
-
-      // if property name is the name of the flag, return the value of 'enabled' attribute, or default to false
-      // else, property name is an attribute in the flag, return the value of that attribute, or default to null
-      String key = parts.length==3?"enabled":parts[3];
+      Object flag = getSnapshot(key.configuration).get(key.flag);
 
-      logger.debug(String.format("Accessing key: %s", key));
+      if(logger.isDebugEnabled()) {
+        logger.debug(String.format("Accessing key: %s", key.attribute));
+      }
 
-      if(flag.containsKey(key)) {
-        return flag.get(key);
+      if(flag instanceof Map) {
+        Object value = ((Map<?, ?>)flag).get(key.attribute);
+        if(value != null) {
+          return value;
+        }
       }
     } catch(IOException ex) {
-      logger.warn(String.format("Unable to retrieve property %s from AppConfig agent: %s", nameWithDefault[0], ex.getMessage()));
+      logger.warn(String.format("Unable to retrieve property %s from AppConfig agent: %s", name, ex.getMessage()));
     }
+    return key.defaultValue;
+  }
 
-    if(nameWithDefault.length == 2) {
-      if(parts.length==3) {
-        return Boolean.valueOf(nameWithDefault[1]);
-      } else {
-        return nameWithDefault[1];
+  /**
+   * Content of a configuration and when it was fetched.
+   */
+  private static final class Snapshot {
+
+    /**
+     * Placeholder for a configuration that could not be fetched yet.
+     */
+    static final Snapshot UNAVAILABLE = new Snapshot(Collections.emptyMap(), null, true);
+
+    final Map<String, Object> content;
+
+    final Instant refreshedAt;
+
+    final boolean stale;
+
+    Snapshot(Map<String, Object> content, Instant refreshedAt, boolean stale) {
+      this.content = content;
+      this.refreshedAt = refreshedAt;
+      this.stale = stale;
+    }
+
+    Snapshot markStale() {
+      return stale ? this : new Snapshot(content, refreshedAt, true);
+    }
+  }
+
+  /**
+   * Property name parsed into the configuration, flag and attribute it refers to.
+   */
+  private static final class PropertyKey {
+
+    /**
+     * Marker for names that start with the prefix but can never resolve to a flag.
+     */
+    static final PropertyKey INVALID = new PropertyKey(null, null, null, null);
+
+    final String configuration;
+
+    final String flag;
+
+    final String attribute;
+
+    final Object defaultValue;
+
+    private PropertyKey(String configuration, String flag, String attribute, Object defaultValue) {
+      this.configuration = configuration;
+      this.flag = flag;
+      this.attribute = attribute;
+      this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Parse '<prefix>.<configuration>.<flag>[.<attribute>][:<default>]', starting after the prefix.
+     */
+    static PropertyKey parse(String name, int start) {
+      int defaultStart = name.indexOf(':', start);
+      int end = defaultStart < 0 ? name.length() : defaultStart;
+      int flagStart = name.indexOf('.', start) + 1;
+      if(flagStart <= start + 1 || flagStart >= end) {
+        return INVALID;
       }
-    } else {
-      if(parts.length==3) {
-        return false;
-      } else {
-        return null;
+      int attributeStart = name.indexOf('.', flagStart) + 1;
+      if(attributeStart > end) {
+        attributeStart = 0;
+      }
+      int flagEnd = attributeStart == 0 ? end : attributeStart - 1;
+      if(flagEnd == flagStart) {
+        return INVALID;
+      }
+      String configuration = name.substring(start, flagStart - 1);
+      String flag = name.substring(flagStart, flagEnd);
+      String defaultText = defaultStart < 0 ? null : name.substring(defaultStart + 1);
+
+      // if property name is the name of the flag, return the value of 'enabled' attribute, or default to false
+      // else, property name is an attribute in the flag, return the value of that attribute, or default to null
+      if(attributeStart == 0) {
+        return new PropertyKey(configuration, flag, "enabled", defaultText == null ? Boolean.FALSE : Boolean.valueOf(defaultText));
       }
+      return new PropertyKey(configuration, flag, name.substring(attributeStart, end), defaultText);
     }
   }
-}
\ No newline at end of file
+}
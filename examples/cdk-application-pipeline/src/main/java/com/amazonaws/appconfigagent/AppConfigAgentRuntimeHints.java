@@ -0,0 +1,20 @@
+package com.amazonaws.appconfigagent;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * Reflection a native image needs for the AppConfig agent support. The initializer registers its
+ * beans at runtime, so AOT never sees them: the actuator endpoint is discovered and invoked by
+ * reflection, and the snapshot file is bound by Jackson. Registered in META-INF/spring/aot.factories.
+ */
+public class AppConfigAgentRuntimeHints implements RuntimeHintsRegistrar {
+
+  @Override
+  public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+    hints.reflection().registerType(AppConfigAgentEndpoint.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+    new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), AppConfigSnapshotFile.Entry.class);
+  }
+}
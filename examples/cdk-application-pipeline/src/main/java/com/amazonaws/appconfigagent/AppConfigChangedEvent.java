@@ -0,0 +1,71 @@
+package com.amazonaws.appconfigagent;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when a refresh of an AppConfig configuration returns different content than
+ * the snapshot it replaces. Beans that cache values derived from a configuration can listen
+ * for this event to rebind without a restart.
+ */
+public class AppConfigChangedEvent extends ApplicationEvent {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String configurationName;
+
+  private final Map<String, Object> previous;
+
+  private final Map<String, Object> current;
+
+  private final Set<String> changedKeys;
+
+  public AppConfigChangedEvent(Object source, String configurationName, Map<String, Object> previous, Map<String, Object> current) {
+    super(source);
+    this.configurationName = configurationName;
+    this.previous = Collections.unmodifiableMap(previous);
+    this.current = Collections.unmodifiableMap(current);
+    this.changedKeys = Collections.unmodifiableSet(diff(previous, current));
+  }
+
+  private static Set<String> diff(Map<String, Object> previous, Map<String, Object> current) {
+    Set<String> keys = new HashSet<>(previous.keySet());
+    keys.addAll(current.keySet());
+    keys.removeIf(key -> Objects.equals(previous.get(key), current.get(key)));
+    return keys;
+  }
+
+  /**
+   * Name of the configuration that changed.
+   */
+  public String getConfigurationName() {
+    return configurationName;
+  }
+
+  /**
+   * Content of the configuration before the refresh.
+   */
+  public Map<String, Object> getPrevious() {
+    return previous;
+  }
+
+  /**
+   * Content of the configuration after the refresh.
+   */
+  public Map<String, Object> getCurrent() {
+    return current;
+  }
+
+  /**
+   * Top level keys (flags, or attributes of a freeform configuration) that were added,
+   * removed or modified.
+   */
+  public Set<String> getChangedKeys() {
+    return changedKeys;
+  }
+}
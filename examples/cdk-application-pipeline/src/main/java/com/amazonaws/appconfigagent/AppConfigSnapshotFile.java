@@ -0,0 +1,102 @@
+package com.amazonaws.appconfigagent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * Local copy of the last configurations fetched from the AppConfig agent, so that the next
+ * start can serve them before the agent is reachable.
+ */
+public class AppConfigSnapshotFile {
+
+  private static final TypeReference<Map<String, Entry>> FILE_TYPE = new TypeReference<Map<String, Entry>>() {};
+
+  private static final Log logger = LogFactory.getLog(AppConfigSnapshotFile.class);
+
+  private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+  private final Path path;
+
+  public AppConfigSnapshotFile(Path path) {
+    this.path = path;
+  }
+
+  /**
+   * Read the configurations saved by a previous run, or nothing if there is no usable file.
+   */
+  public Map<String, Entry> load() {
+    if(!Files.isReadable(path)) {
+      return Collections.emptyMap();
+    }
+    try {
+      Map<String, Entry> entries = mapper.readValue(path.toFile(), FILE_TYPE);
+      logger.info(String.format("Loaded AppConfig configurations %s from '%s'", entries.keySet(), path));
+      return entries;
+    } catch(IOException ex) {
+      logger.warn(String.format("Ignoring unreadable AppConfig snapshot file '%s': %s", path, ex.getMessage()));
+      return Collections.emptyMap();
+    }
+  }
+
+  /**
+   * Replace the file with the given configurations. The file is written next to the target
+   * and moved into place, so a crash never leaves a truncated file behind.
+   */
+  public void save(Map<String, Entry> entries) {
+    try {
+      Path parent = path.toAbsolutePath().getParent();
+      if(parent == null) {
+        throw new IOException("Snapshot file has no parent directory");
+      }
+      Files.createDirectories(parent);
+      Path temp = Files.createTempFile(parent, "appconfig-snapshot", ".tmp");
+      try {
+        mapper.writeValue(temp.toFile(), new LinkedHashMap<>(entries));
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch(IOException ex) {
+      logger.warn(String.format("Unable to save AppConfig snapshot file '%s': %s", path, ex.getMessage()));
+    }
+  }
+
+  /**
+   * Saved content of one configuration.
+   */
+  public static class Entry {
+
+    private final Instant refreshedAt;
+
+    private final Map<String, Object> content;
+
+    @JsonCreator
+    public Entry(@JsonProperty("refreshedAt") Instant refreshedAt, @JsonProperty("content") Map<String, Object> content) {
+      this.refreshedAt = refreshedAt;
+      this.content = content == null ? null : Collections.unmodifiableMap(content);
+    }
+
+    public Instant getRefreshedAt() {
+      return refreshedAt;
+    }
+
+    public Map<String, Object> getContent() {
+      return content;
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.amazonaws.appconfigagent;
+
+import org.springframework.core.env.Environment;
+
+/**
+ * Read the current state of AppConfig feature flags from singleton beans.
+ *
+ * Lookups go through the {@link Environment}, so local overrides (profiles, system properties)
+ * take precedence over the {@link AppConfigAgentPropertySource} snapshot, exactly like
+ * {@code @Value("${appconfig.<configuration>.<flag>}")} placeholders do. Unlike placeholders,
+ * every call reflects the latest refreshed snapshot. Beans that derive state from flags can
+ * listen for {@link AppConfigChangedEvent} to rebuild it.
+ */
+public class FeatureFlags {
+
+  private final Environment environment;
+
+  private final String prefix;
+
+  public FeatureFlags(Environment environment, String prefix) {
+    this.environment = environment;
+    this.prefix = prefix;
+  }
+
+  /**
+   * Get whether a flag is enabled, defaulting to false when the flag is unknown.
+   */
+  public boolean isEnabled(String configurationName, String flagName) {
+    return environment.getProperty(prefix + "." + configurationName + "." + flagName, Boolean.class, false);
+  }
+
+  /**
+   * Get an attribute of a flag, or the given default when the attribute is unknown.
+   */
+  public <T> T getAttribute(String configurationName, String flagName, String attribute, Class<T> type, T defaultValue) {
+    return environment.getProperty(prefix + "." + configurationName + "." + flagName + "." + attribute, type, defaultValue);
+  }
+}
@@ -0,0 +1,148 @@
+package com.amazonaws.dpri.fruits;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * Limit on the number of requests in flight, adjusted by additive increase
+ * and multiplicative decrease (AIMD): every request slower than the latency
+ * target multiplies the limit by the backoff ratio, and every faster request
+ * that finds the limit at least half used adds 1/limit to it, so about one
+ * per round of requests. When the database slows down, the limit
+ * follows the number of requests it can still serve in time, and the rest
+ * are rejected rather than queued.
+ *
+ * Once bound to a MeterRegistry, the limit and the requests in flight are
+ * the gauges 'fruits.concurrency.limit' and 'fruits.concurrency.in-flight',
+ * and rejected requests are counted in 'fruits.concurrency.rejected'.
+ */
+public class AimdConcurrencyLimit implements MeterBinder {
+    /**
+     * Lowest limit, so some requests always get through to measure latency.
+     */
+    private final int minLimit;
+
+    /**
+     * Highest limit.
+     */
+    private final int maxLimit;
+
+    /**
+     * Latency above which the limit shrinks.
+     */
+    private final long latencyTargetNanos;
+
+    /**
+     * Factor applied to the limit for every slow request.
+     */
+    private final double backoffRatio;
+
+    /**
+     * Current limit, fractional so additive increases can be smaller than one.
+     * Read without locking by every request, only written while holding the
+     * lock on this limit, so concurrent adjustments are not lost.
+     */
+    private volatile double limit;
+
+    /**
+     * Requests admitted and not yet completed.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Meters are registered here, and recorded in every registry this limit is bound to.
+     */
+    private final CompositeMeterRegistry registry = new CompositeMeterRegistry();
+
+    /**
+     * Requests rejected because the limit was reached.
+     */
+    private final Counter rejected = Counter.builder("fruits.concurrency.rejected")
+            .description("Requests rejected because too many were in flight")
+            .register(registry);
+
+    AimdConcurrencyLimit(final int initial, final int min, final int max, final Duration latencyTarget, final double backoff) {
+        if (min < 1 || initial < min || max < initial) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+        }
+        if (backoff <= 0 || backoff >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+        }
+        this.limit = initial;
+        this.minLimit = min;
+        this.maxLimit = max;
+        this.latencyTargetNanos = latencyTarget.toNanos();
+        this.backoffRatio = backoff;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry meterRegistry) {
+        registry.add(meterRegistry);
+        Gauge.builder("fruits.concurrency.limit", this, AimdConcurrencyLimit::getLimit)
+                .description("Requests allowed in flight")
+                .register(registry);
+        Gauge.builder("fruits.concurrency.in-flight", inFlight, AtomicInteger::get)
+                .description("Requests in flight")
+                .register(registry);
+    }
+
+    /**
+     * Current limit.
+     * @return requests allowed in flight
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Admit a request if the limit allows it. Every admitted request must be
+     * followed by exactly one call to release.
+     * @return whether the request was admitted
+     */
+    public boolean tryAcquire() {
+        int current = getLimit();
+        int admitted = inFlight.incrementAndGet();
+        if (admitted > current) {
+            inFlight.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Complete an admitted request.
+     * @param latencyNanos time the request took, or a negative value when
+     * it should not move the limit, like a long streamed response
+     */
+    public void release(final long latencyNanos) {
+        int admitted = inFlight.getAndDecrement();
+        if (latencyNanos < 0) {
+            return;
+        }
+        boolean slow = latencyNanos > latencyTargetNanos;
+        if (slow ? limit > minLimit : shouldGrow(admitted)) {
+            adjust(slow, admitted);
+        }
+    }
+
+    private boolean shouldGrow(final int admitted) {
+        double current = limit;
+        // only grow a limit that is in use, an idle service says nothing about its capacity
+        return current < maxLimit && admitted * 2 >= current;
+    }
+
+    private synchronized void adjust(final boolean slow, final int admitted) {
+        if (slow) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (shouldGrow(admitted)) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.amazonaws.dpri.fruits;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Adaptive limit on the API requests in flight in the servlet variant,
+ * configured by the 'fruits.concurrency-limit' properties. Actuator and the
+ * static pages are not limited, so health checks still answer under load.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "fruits.concurrency-limit.enabled", matchIfMissing = true)
+public class ConcurrencyLimitConfiguration {
+
+    /**
+     * Limit shared by all API requests.
+     * @param initial limit before any request completed
+     * @param min lowest limit
+     * @param max highest limit
+     * @param latencyTarget latency above which the limit shrinks
+     * @param backoff factor applied to the limit for every slow request
+     * @return concurrency limit
+     */
+    @Bean
+    AimdConcurrencyLimit concurrencyLimit(
+            @Value("${fruits.concurrency-limit.initial-limit:20}") final int initial,
+            @Value("${fruits.concurrency-limit.min-limit:2}") final int min,
+            @Value("${fruits.concurrency-limit.max-limit:200}") final int max,
+            @Value("${fruits.concurrency-limit.latency-target:500ms}") final Duration latencyTarget,
+            @Value("${fruits.concurrency-limit.backoff-ratio:0.9}") final double backoff) {
+        return new AimdConcurrencyLimit(initial, min, max, latencyTarget, backoff);
+    }
+
+    /**
+     * Filter applying the limit to the API.
+     * @param limit concurrency limit
+     * @return filter registration
+     */
+    @Bean
+    FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(final AimdConcurrencyLimit limit) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(new ConcurrencyLimitFilter(limit));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+}
@@ -0,0 +1,84 @@
+package com.amazonaws.dpri.fruits;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Admits API requests while the concurrency limit allows it, and answers
+ * the others straight away with 503 and a Retry-After header, before they
+ * take a Tomcat thread's time or a place in the connection pool queue.
+ * Synchronous requests report their latency to the limit. Asynchronous ones,
+ * like streamed exports, take as long as their body is large, so they only
+ * hold their place until they complete.
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    /**
+     * Limit shared by all API requests.
+     */
+    private final AimdConcurrencyLimit limit;
+
+    ConcurrencyLimitFilter(final AimdConcurrencyLimit l) {
+        this.limit = l;
+    }
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request, final HttpServletResponse response,
+            final FilterChain chain) throws ServletException, IOException {
+        if (!limit.tryAcquire()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.getWriter().write("Too many requests in flight, retry");
+            return;
+        }
+        long start = System.nanoTime();
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            async = request.isAsyncStarted();
+        } finally {
+            if (async) {
+                request.getAsyncContext().addListener(new ReleaseOnComplete());
+            } else {
+                limit.release(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Releases the place of an asynchronous request once it is over.
+     */
+    private final class ReleaseOnComplete implements AsyncListener {
+        @Override
+        public void onComplete(final AsyncEvent event) {
+            limit.release(-1);
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) {
+            // followed by onComplete
+        }
+
+        @Override
+        public void onError(final AsyncEvent event) {
+            // followed by onComplete
+        }
+
+        @Override
+        public void onStartAsync(final AsyncEvent event) {
+            // a new cycle of the same request keeps its place
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
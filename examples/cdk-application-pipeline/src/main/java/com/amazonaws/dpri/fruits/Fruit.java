@@ -8,6 +8,7 @@ import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Version;
 
 /**
  * Entity for persisting fruits.
@@ -30,6 +31,12 @@ public class Fruit {
   @Enumerated(EnumType.STRING)
   private FruitClassification classification;
 
+  /**
+   * Incremented on every update, used for optimistic locking and ETags.
+   */
+  @Version
+  private Long version;
+
   Fruit() {
   }
 
@@ -78,7 +85,6 @@ public class Fruit {
     return this.classification;
   }
 
-
   /**
    * Set classification to new value.
    * @param newClassification
@@ -87,6 +93,22 @@ public class Fruit {
     this.classification = newClassification;
   }
 
+  /**
+   * Get the current version.
+   * @return version
+   */
+  public Long getVersion() {
+    return this.version;
+  }
+
+  /**
+   * Set version to new value.
+   * @param newVersion
+   */
+  public void setVersion(final Long newVersion) {
+    this.version = newVersion;
+  }
+
   /**
    * Fruits are equal if they have the same id and name.
    */
@@ -1,24 +1,88 @@
 package com.amazonaws.dpri.fruits;
 
+import java.util.Arrays;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.env.Environment;
 
 import com.amazonaws.appconfigagent.AppConfigAgentInitializer;
+import com.amazonaws.appconfigagent.FeatureFlags;
 
 /**
  * Spring boot application for fruit API.
  */
 @SpringBootApplication
+@EnableCaching
+@ImportRuntimeHints(FruitRuntimeHints.class)
 public class FruitApplication {
 
   /**
-   * Start the fruit API application.
+   * Argument to apply the database migrations and exit, see application-migrate.yml.
+   */
+  static final String MIGRATE_ONLY = "--migrate-only";
+
+  /**
+   * Start the fruit API application, or only migrate its database when
+   * started with --migrate-only.
    * @param args
    */
   @SuppressWarnings({"PMD", "checkstyle:hideutilityclassconstructor"})
   public static void main(final String[] args) {
-    new SpringApplicationBuilder(FruitApplication.class)
-        .initializers(new AppConfigAgentInitializer())
-        .run(args);
+    SpringApplicationBuilder application = new SpringApplicationBuilder(FruitApplication.class)
+        .initializers(new AppConfigAgentInitializer());
+    if (Arrays.asList(args).contains(MIGRATE_ONLY)) {
+      System.exit(SpringApplication.exit(application.profiles("migrate").run(args)));
+    }
+    application.run(args);
+  }
+
+  /**
+   * Feature flags resolved from the AppConfig agent, or from local properties.
+   * @param environment
+   * @return feature flags
+   */
+  @Bean
+  FeatureFlags featureFlags(final Environment environment) {
+    return new FeatureFlags(environment, environment.getProperty("appconfig-agent.prefix", "appconfig"));
+  }
+
+  /**
+   * Defer the cache puts and evictions made inside a transaction until it
+   * commits, so an eviction never runs while the old row is still the
+   * committed one. Boot's cache metrics look through the decorated caches.
+   * @return post processor wrapping the cache manager
+   */
+  @Bean
+  static BeanPostProcessor transactionAwareCacheManager() {
+    return new BeanPostProcessor() {
+      @Override
+      public Object postProcessAfterInitialization(final Object bean, final String beanName) {
+        if (bean instanceof CacheManager && !(bean instanceof TransactionAwareCacheManagerProxy)) {
+          return new TransactionAwareCacheManagerProxy((CacheManager) bean);
+        }
+        return bean;
+      }
+    };
+  }
+
+  /**
+   * Serve the reactive variant from Netty. Tomcat is on the classpath for
+   * the servlet variant and would otherwise be picked first.
+   * @return web server factory
+   */
+  @Bean
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+  NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+    return new NettyReactiveWebServerFactory();
   }
 }
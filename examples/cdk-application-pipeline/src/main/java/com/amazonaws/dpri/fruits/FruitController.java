@@ -1,9 +1,20 @@
 package com.amazonaws.dpri.fruits;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -12,17 +23,43 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.context.annotation.RequestScope;
+import org.springframework.web.context.request.WebRequest;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
- * API controller for fruits.
+ * API controller for fruits, active when the application runs as a servlet
+ * web application. See ReactiveFruitController for the reactive variant.
  */
 @RestController
-@RequestScope
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class FruitController {
+    /**
+     * Page size when the client does not ask for one.
+     */
+    static final int DEFAULT_LIMIT = 100;
+
+    /**
+     * Largest page size a client may ask for.
+     */
+    static final int MAX_LIMIT = 1000;
+
+    /**
+     * Media type of bulk imports and their results.
+     */
+    static final String NDJSON = "application/x-ndjson";
+
+    /**
+     * Largest import chunk a client may ask for.
+     */
+    static final int MAX_CHUNK_SIZE = 10000;
+
     /**
      * JPA repository for fruits.
      */
@@ -33,42 +70,224 @@ public class FruitController {
      */
     private final FruitMapper mapper;
 
-    FruitController(final FruitRepository r, final FruitMapper m) {
+    /**
+     * Streams the whole table for unpaginated clients.
+     */
+    private final FruitExporter exporter;
+
+    /**
+     * Inserts fruits in bulk.
+     */
+    private final FruitImporter importer;
+
+    /**
+     * Serialized bodies of pages and fruits, cleared once every write commits.
+     */
+    private final FruitResponseCache responses;
+
+    /**
+     * Fruits cached by FruitRepository.findViewById.
+     */
+    private final Cache fruitCache;
+
+    /**
+     * Pages of fruits, keyed by the catalog version they were read at.
+     */
+    private final Cache pageCache;
+
+    FruitController(final FruitRepository r, final FruitMapper m, final FruitExporter e, final FruitImporter i,
+            final FruitResponseCache c, final CacheManager cacheManager) {
         this.repository = r;
         this.mapper = m;
+        this.exporter = e;
+        this.importer = i;
+        this.responses = c;
+        this.fruitCache = cacheManager.getCache("fruit");
+        this.pageCache = cacheManager.getCache("fruitPages");
+    }
+
+    /**
+     * Strong ETag for a representation: the state of the data plus the
+     * feature flags that change how it is rendered.
+     */
+    static String etag(final String state, final boolean classification) {
+        return "\"" + state + (classification ? "-c" : "") + "\"";
     }
 
+    /**
+     * Page of fruits, optionally filtered by classification and by the start
+     * of the name. The classification filter is ignored while classifications
+     * are disabled, as it would reveal them. The ETag check and the page
+     * share one read-only transaction. The ETag covers the whole table and
+     * the flag, so with the parameters it keys the serialized page.
+     */
     @GetMapping("/api/fruits")
-    List<FruitDTO> all() {
-        return repository.findAll()
-                .stream()
-                .map(mapper::toDto)
+    @Transactional(readOnly = true)
+    ResponseEntity<byte[]> page(
+            @RequestParam(defaultValue = "0") final long after,
+            @RequestParam(defaultValue = "" + DEFAULT_LIMIT) final int limit,
+            @RequestParam(name = "classification", required = false) final FruitClassification filter,
+            @RequestParam(required = false) final String namePrefix,
+            final WebRequest request) {
+        int size = Math.max(1, Math.min(limit, MAX_LIMIT));
+        boolean classification = mapper.isClassificationEnabled();
+        long version = repository.findCatalogVersion();
+        String state = etag(String.valueOf(version), classification);
+        String etag = responses.etag(state, request);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        FruitClassification classificationFilter = classification ? filter : null;
+        String prefix = StringUtils.hasLength(namePrefix) ? namePrefix : null;
+        String key = "page:" + state + ":" + after + ":" + size + ":" + classificationFilter + ":" + prefix;
+        return responses.toResponse(responses.get(key, () -> page(version, classificationFilter, prefix, after, size, classification)),
+                etag, request);
+    }
+
+    private FruitPage page(final long version, final FruitClassification filter, final String namePrefix, final long after,
+            final int size, final boolean classification) {
+        // ask for one more row than the page holds to know whether there is a next page
+        Limit limit = Limit.of(size + 1);
+        // keyed by the version read in the same transaction, so rows of a lagging replica never
+        // answer for a newer version, and entries of older versions are simply no longer asked for
+        String key = version + ":" + after + ":" + limit.max() + ":" + filter + ":" + namePrefix;
+        List<FruitView> fruits = pageCache == null ? null : pageCache.get(key, () -> find(filter, namePrefix, after, limit));
+        if (fruits == null) {
+            fruits = find(filter, namePrefix, after, limit);
+        }
+        boolean hasNext = fruits.size() > size;
+        List<FruitDTO> items = fruits.stream()
+                .limit(size)
+                .map(fruit -> mapper.toDto(fruit, classification))
                 .collect(Collectors.toList());
+        return new FruitPage(items, hasNext ? items.get(size - 1).getId() : null);
+    }
+
+    private List<FruitView> find(final FruitClassification filter, final String namePrefix, final long after, final Limit limit) {
+        if (filter != null && namePrefix != null) {
+            return repository.findByClassificationAndNameStartingWithAndIdGreaterThanOrderByIdAsc(filter, namePrefix, after, limit);
+        }
+        if (filter != null) {
+            return repository.findByClassificationAndIdGreaterThanOrderByIdAsc(filter, after, limit);
+        }
+        if (namePrefix != null) {
+            return repository.findByNameStartingWithAndIdGreaterThanOrderByIdAsc(namePrefix, after, limit);
+        }
+        return repository.findByIdGreaterThanOrderByIdAsc(after, limit);
     }
 
+    /**
+     * Whole table in one response, for clients written before pagination.
+     * Rows are streamed from the database to the client as they are read,
+     * so the response starts before the query ends and the heap stays flat.
+     */
+    @GetMapping(path = "/api/fruits", params = "unpaginated=true")
+    ResponseEntity<StreamingResponseBody> all(final WebRequest request) {
+        if (request.checkNotModified(etag(String.valueOf(repository.findCatalogVersion()), mapper.isClassificationEnabled()))) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(exporter::writeAll);
+    }
+
+    /**
+     * The version lookup and the save share one transaction, so with a read
+     * replica both go to the primary.
+     */
     @PostMapping("/api/fruits")
+    @Transactional
     FruitDTO newFruit(@RequestBody final FruitDTO fruit) {
-        return mapper.toDto(repository.save(mapper.toEntity(fruit)));
+        boolean classification = mapper.isClassificationEnabled();
+        Fruit saved = repository.save(withCurrentVersion(mapper.toEntity(fruit, classification)));
+        repository.incrementCatalogVersion();
+        responses.clear();
+        return mapper.toDto(saved, classification);
+    }
+
+    /**
+     * Bulk import of newline delimited fruits, answered with one result line
+     * per chunk as the chunks are inserted.
+     */
+    @PostMapping(path = "/api/fruits/import", consumes = NDJSON)
+    void importFruits(
+            @RequestParam(required = false) final Integer chunkSize,
+            final HttpServletRequest request,
+            final HttpServletResponse response) throws IOException {
+        int size = chunkSize == null ? importer.getDefaultChunkSize() : Math.max(1, Math.min(chunkSize, MAX_CHUNK_SIZE));
+        response.setContentType(NDJSON);
+        try {
+            importer.importAll(request.getInputStream(), response.getOutputStream(), size);
+        } finally {
+            responses.clear();
+        }
     }
 
+    /**
+     * Answer with 304 from the version column alone when the client already
+     * has the current version, otherwise answer with the serialized fruit of
+     * that version or load and render it, in one read-only transaction.
+     */
     @GetMapping("/api/fruits/{id}")
-    FruitDTO one(@PathVariable final Long id) {
-        return repository.findById(id)
-                .map(mapper::toDto)
-                .orElseThrow(() -> new FruitNotFoundException(id));
+    @Transactional(readOnly = true)
+    ResponseEntity<byte[]> one(@PathVariable final Long id, final WebRequest request) {
+        Long version = repository.findVersionById(id).orElseThrow(() -> new FruitNotFoundException(id));
+        boolean classification = mapper.isClassificationEnabled();
+        String state = etag(String.valueOf(version), classification);
+        if (request.checkNotModified(responses.etag(state, request))) {
+            return null;
+        }
+        FruitResponseCache.Body body = responses.get("fruit:" + id + ":" + state);
+        if (body == null) {
+            FruitView fruit = repository.findViewById(id).orElseThrow(() -> new FruitNotFoundException(id));
+            if (!version.equals(fruit.getVersion()) && fruitCache != null) {
+                // cached before a write that has committed since, drop it now rather than at commit and read the row
+                fruitCache.evictIfPresent(id);
+                fruit = repository.findViewById(id).orElseThrow(() -> new FruitNotFoundException(id));
+            }
+            // key and tag with the version actually rendered, which is newer if the row changed since the check
+            state = etag(String.valueOf(fruit.getVersion()), classification);
+            body = responses.put("fruit:" + id + ":" + state, mapper.toDto(fruit, classification));
+        }
+        return responses.toResponse(body, responses.etag(state, request), request);
     }
 
     @PutMapping("/api/fruits/{id}")
+    @Transactional
     FruitDTO replaceFruit(
             @RequestBody final FruitDTO newFruit,
             @PathVariable final Long id) {
         newFruit.setId(id);
-        return mapper.toDto(repository.save(mapper.toEntity(newFruit)));
+        boolean classification = mapper.isClassificationEnabled();
+        Fruit saved = repository.save(withCurrentVersion(mapper.toEntity(newFruit, classification)));
+        repository.incrementCatalogVersion();
+        responses.clear();
+        return mapper.toDto(saved, classification);
+    }
+
+    /**
+     * Writes replace whatever is stored, as they did before fruits were
+     * versioned: take the stored version, or create a new fruit if the id
+     * does not exist.
+     */
+    private Fruit withCurrentVersion(final Fruit entity) {
+        if (entity.getId() != null) {
+            Optional<Long> version = repository.findVersionById(entity.getId());
+            if (version.isPresent()) {
+                entity.setVersion(version.get());
+            } else {
+                entity.setId(null);
+            }
+        }
+        return entity;
     }
 
     @DeleteMapping("/api/fruits/{id}")
+    @Transactional
     void deleteFruit(@PathVariable final Long id) {
         repository.deleteById(id);
+        repository.incrementCatalogVersion();
+        responses.clear();
     }
 }
 
@@ -83,6 +302,17 @@ class FruitNotFoundAdvice {
     }
 }
 
+@ControllerAdvice
+class FruitConflictAdvice {
+
+    @ResponseBody
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    String fruitConflictHandler(final OptimisticLockingFailureException ex) {
+        return "Fruit was changed by another request, retry";
+    }
+}
+
 class FruitNotFoundException extends RuntimeException {
     FruitNotFoundException(final Long id) {
         super("Unable to find fruit " + id);
@@ -0,0 +1,86 @@
+package com.amazonaws.dpri.fruits;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Writes the whole fruit table as a JSON array, one row at a time, so
+ * memory use does not grow with the size of the table.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class FruitExporter {
+    /**
+     * JPA repository for fruits.
+     */
+    private final FruitRepository repository;
+
+    /**
+     * Logic to map between entities and DTOs.
+     */
+    private final FruitMapper mapper;
+
+    /**
+     * Mapper configured like the one used for regular responses.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Writer for single fruits that leaves flushing to the response buffer.
+     */
+    private final ObjectWriter fruitWriter;
+
+    /**
+     * Keeps the result set open while the response is written.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    FruitExporter(final FruitRepository r, final FruitMapper m, final ObjectMapper o,
+            final PlatformTransactionManager t) {
+        this.repository = r;
+        this.mapper = m;
+        this.objectMapper = o;
+        this.fruitWriter = o.writerFor(FruitDTO.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.transactionTemplate = new TransactionTemplate(t);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Write every fruit to the stream as a JSON array.
+     * @param out response body
+     * @throws IOException if the client goes away
+     */
+    public void writeAll(final OutputStream out) throws IOException {
+        boolean classification = mapper.isClassificationEnabled();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            transactionTemplate.executeWithoutResult(status -> {
+                // projections are not attached to the persistence context, so it stays empty however many rows are written
+                try (Stream<FruitView> fruits = repository.streamAllByOrderByIdAsc()) {
+                    Iterator<FruitView> it = fruits.iterator();
+                    while (it.hasNext()) {
+                        fruitWriter.writeValue(generator, mapper.toDto(it.next(), classification));
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            generator.writeEndArray();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.amazonaws.dpri.fruits;
+
+/**
+ * Outcome of importing one chunk of fruits.
+ */
+public class FruitImportResult {
+  /**
+   * Index of the chunk, starting at 0.
+   */
+  private final int chunk;
+
+  /**
+   * Number of fruits read before this chunk.
+   */
+  private final long offset;
+
+  /**
+   * Number of fruits inserted by this chunk.
+   */
+  private final int inserted;
+
+  /**
+   * Reason the chunk failed, or null if it was inserted.
+   */
+  private final String error;
+
+  /**
+   * Create a result.
+   * @param chunkIndex
+   * @param chunkOffset
+   * @param insertedCount
+   * @param failure
+   */
+  public FruitImportResult(final int chunkIndex, final long chunkOffset, final int insertedCount, final String failure) {
+    this.chunk = chunkIndex;
+    this.offset = chunkOffset;
+    this.inserted = insertedCount;
+    this.error = failure;
+  }
+
+  /**
+   * Get the chunk index.
+   * @return chunk
+   */
+  public int getChunk() {
+    return this.chunk;
+  }
+
+  /**
+   * Get the number of fruits read before this chunk.
+   * @return offset
+   */
+  public long getOffset() {
+    return this.offset;
+  }
+
+  /**
+   * Get the number of fruits inserted.
+   * @return inserted
+   */
+  public int getInserted() {
+    return this.inserted;
+  }
+
+  /**
+   * Get the reason the chunk failed.
+   * @return error, or null
+   */
+  public String getError() {
+    return this.error;
+  }
+}
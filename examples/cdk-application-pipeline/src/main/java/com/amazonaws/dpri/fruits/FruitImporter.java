@@ -0,0 +1,180 @@
+package com.amazonaws.dpri.fruits;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Imports fruits from newline delimited JSON. Fruits are read one at a time
+ * and inserted in chunks, one JDBC batch and one transaction per chunk, so
+ * memory use is bounded by the chunk size whatever the size of the upload.
+ * MySQL Connector/J only sends a batch as one multi-row insert when the URL
+ * sets rewriteBatchedStatements=true, as the deployment does.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class FruitImporter {
+    /**
+     * Insert statement for one fruit.
+     */
+    private static final String INSERT = "insert into fruit (name, classification, version) values (?, ?, 0)";
+
+    /**
+     * Catalog version increment, see FruitRepository.incrementCatalogVersion.
+     */
+    private static final String INCREMENT_CATALOG_VERSION = "update fruit_catalog set version = version + 1 where id = 1";
+
+    /**
+     * Inserts the chunks.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * One transaction per chunk.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Logic to map between entities and DTOs.
+     */
+    private final FruitMapper mapper;
+
+    /**
+     * Caches filled by FruitRepository, bypassed by the batch inserts.
+     */
+    private final CacheManager cacheManager;
+
+    /**
+     * Reader for one fruit per line.
+     */
+    private final ObjectReader fruitReader;
+
+    /**
+     * Writer for one result per line.
+     */
+    private final ObjectWriter resultWriter;
+
+    /**
+     * Mapper configured like the one used for regular responses.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Fruits per chunk when the client does not ask for a size.
+     */
+    private final int defaultChunkSize;
+
+    FruitImporter(final JdbcTemplate j, final PlatformTransactionManager t, final FruitMapper m,
+            final CacheManager c, final ObjectMapper o,
+            @Value("${fruits.import.chunk-size:500}") final int chunkSize) {
+        this.jdbcTemplate = j;
+        this.transactionTemplate = new TransactionTemplate(t);
+        this.mapper = m;
+        this.cacheManager = c;
+        this.objectMapper = o;
+        this.fruitReader = o.readerFor(FruitDTO.class);
+        this.resultWriter = o.writerFor(FruitImportResult.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.defaultChunkSize = chunkSize;
+    }
+
+    /**
+     * Get the chunk size used when the client does not ask for one.
+     * @return chunk size
+     */
+    public int getDefaultChunkSize() {
+        return this.defaultChunkSize;
+    }
+
+    /**
+     * Insert every fruit in the input and write one result per chunk to the
+     * output as soon as the chunk is done. A chunk that fails is rolled back
+     * and the import carries on with the next one; input that cannot be
+     * parsed ends the import.
+     * @param in newline delimited fruits
+     * @param out newline delimited results
+     * @param chunkSize fruits per chunk
+     * @throws IOException if the client goes away
+     */
+    public void importAll(final InputStream in, final OutputStream out, final int chunkSize) throws IOException {
+        boolean classification = mapper.isClassificationEnabled();
+        List<Object[]> chunk = new ArrayList<>(chunkSize);
+        int index = 0;
+        long offset = 0;
+        try (MappingIterator<FruitDTO> fruits = fruitReader.readValues(in);
+                JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            try {
+                while (fruits.hasNextValue()) {
+                    FruitDTO dto = fruits.nextValue();
+                    if (dto == null) {
+                        continue;
+                    }
+                    Fruit fruit = mapper.toEntity(dto, classification);
+                    chunk.add(new Object[] {fruit.getName(),
+                        fruit.getClassification() == null ? null : fruit.getClassification().name()});
+                    if (chunk.size() == chunkSize) {
+                        write(generator, insert(index++, offset, chunk));
+                        offset += chunk.size();
+                        chunk.clear();
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    write(generator, insert(index, offset, chunk));
+                }
+            } catch (JsonProcessingException ex) {
+                // the rest of the stream cannot be trusted, report the fruits read so far as failed
+                write(generator, new FruitImportResult(index, offset, 0, "Invalid input: " + ex.getOriginalMessage()));
+            }
+        } finally {
+            evictCaches();
+        }
+    }
+
+    private FruitImportResult insert(final int index, final long offset, final List<Object[]> chunk) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT, chunk);
+                jdbcTemplate.update(INCREMENT_CATALOG_VERSION);
+            });
+            return new FruitImportResult(index, offset, chunk.size(), null);
+        } catch (DataAccessException ex) {
+            return new FruitImportResult(index, offset, 0, ex.getMostSpecificCause().getMessage());
+        }
+    }
+
+    private void write(final JsonGenerator generator, final FruitImportResult result) throws IOException {
+        resultWriter.writeValue(generator, result);
+        generator.writeRaw('\n');
+        // let the client follow progress chunk by chunk
+        generator.flush();
+    }
+
+    private void evictCaches() {
+        for (String name : new String[] {"fruit", "fruitPages"}) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+    }
+}
@@ -1,19 +1,34 @@
 package com.amazonaws.dpri.fruits;
 
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.web.context.annotation.RequestScope;
 
-@RequestScope
+import com.amazonaws.appconfigagent.FeatureFlags;
+
 @Component
 public class FruitMapper {
     /**
-     * Feature for enabling fruit classifications
+     * Source of the current feature flag state.
      */
-    @Value("${appconfig.features.classification:false}")
-    boolean classification;
+    private final FeatureFlags featureFlags;
+
+    FruitMapper(final FeatureFlags f) {
+        this.featureFlags = f;
+    }
+
+    /**
+     * Feature for enabling fruit classifications. Read it once per request
+     * and pass it to the mapping methods so one response is consistent.
+     * @return whether classifications are enabled
+     */
+    public boolean isClassificationEnabled() {
+        return featureFlags.isEnabled("features", "classification");
+    }
 
     public FruitDTO toDto(final Fruit entity) {
+        return toDto(entity, isClassificationEnabled());
+    }
+
+    public FruitDTO toDto(final Fruit entity, final boolean classification) {
         FruitDTO dto = new FruitDTO();
         dto.setId(entity.getId());
         dto.setName(entity.getName());
@@ -23,7 +38,21 @@ public class FruitMapper {
         return dto;
     }
 
+    public FruitDTO toDto(final FruitView view, final boolean classification) {
+        FruitDTO dto = new FruitDTO();
+        dto.setId(view.getId());
+        dto.setName(view.getName());
+        if(classification) {
+          dto.setClassification(view.getClassification());
+        }
+        return dto;
+    }
+
     public Fruit toEntity(final FruitDTO dto) {
+        return toEntity(dto, isClassificationEnabled());
+    }
+
+    public Fruit toEntity(final FruitDTO dto, final boolean classification) {
         Fruit entity = new Fruit();
         entity.setId(dto.getId());
         entity.setName(dto.getName());
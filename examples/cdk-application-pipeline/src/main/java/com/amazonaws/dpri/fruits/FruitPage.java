@@ -0,0 +1,45 @@
+package com.amazonaws.dpri.fruits;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of fruits, ordered by id.
+ */
+public class FruitPage {
+  /**
+   * Fruits on this page.
+   */
+  private final List<FruitDTO> items;
+
+  /**
+   * Cursor to pass as 'after' to get the next page, or null on the last page.
+   */
+  private final Long next;
+
+  /**
+   * Create a page.
+   * @param pageItems
+   * @param nextCursor
+   */
+  public FruitPage(final List<FruitDTO> pageItems, final Long nextCursor) {
+    this.items = Collections.unmodifiableList(pageItems);
+    this.next = nextCursor;
+  }
+
+  /**
+   * Get the fruits on this page.
+   * @return items
+   */
+  public List<FruitDTO> getItems() {
+    return this.items;
+  }
+
+  /**
+   * Get the cursor of the next page.
+   * @return next cursor, or null on the last page
+   */
+  public Long getNext() {
+    return this.next;
+  }
+}
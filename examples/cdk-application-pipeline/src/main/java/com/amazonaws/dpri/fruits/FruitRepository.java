@@ -1,7 +1,125 @@
 package com.amazonaws.dpri.fruits;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.persistence.QueryHint;
 
+/**
+ * JPA repository for fruits. Reads return FruitView projections rather than
+ * entities, so nothing they load is tracked by the persistence context.
+ * Single fruits are cached in 'fruit'. Pages are cached in 'fruitPages' by
+ * FruitController, keyed by the catalog version they were read at. Writes
+ * through this repository evict both once the surrounding transaction has
+ * committed, as the cache manager is transaction aware (see FruitApplication),
+ * so a read after a write on the same node sees the new state. A read that
+ * loaded the old row before the commit and caches it after the eviction can
+ * still put it back; the caches' expireAfterWrite bounds how long it stays.
+ */
 public interface FruitRepository extends JpaRepository<Fruit, Long> {
 
+    /**
+     * Keyset page: fruits with an id after the cursor, walking the primary key index.
+     * @param after cursor, exclusive
+     * @param limit maximum number of fruits
+     * @return fruits ordered by id
+     */
+    List<FruitView> findByIdGreaterThanOrderByIdAsc(Long after, Limit limit);
+
+    /**
+     * Keyset page of one classification, narrowed by idx_fruit_classification.
+     * @param classification classification to match
+     * @param after cursor, exclusive
+     * @param limit maximum number of fruits
+     * @return fruits ordered by id
+     */
+    List<FruitView> findByClassificationAndIdGreaterThanOrderByIdAsc(FruitClassification classification, Long after, Limit limit);
+
+    /**
+     * Keyset page of fruits whose name starts with a prefix, as a range scan of idx_fruit_name.
+     * @param prefix start of the name, matched literally
+     * @param after cursor, exclusive
+     * @param limit maximum number of fruits
+     * @return fruits ordered by id
+     */
+    List<FruitView> findByNameStartingWithAndIdGreaterThanOrderByIdAsc(String prefix, Long after, Limit limit);
+
+    /**
+     * Keyset page of one classification whose names start with a prefix.
+     * @param classification classification to match
+     * @param prefix start of the name, matched literally
+     * @param after cursor, exclusive
+     * @param limit maximum number of fruits
+     * @return fruits ordered by id
+     */
+    List<FruitView> findByClassificationAndNameStartingWithAndIdGreaterThanOrderByIdAsc(
+            FruitClassification classification, String prefix, Long after, Limit limit);
+
+    /**
+     * All fruits as a stream backed by an open result set, fetched from the
+     * database in batches. Must be consumed and closed inside a transaction.
+     * MySQL Connector/J ignores the fetch size and reads the whole result
+     * unless the URL sets useCursorFetch=true, as the deployment does.
+     * @return fruits ordered by id
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<FruitView> streamAllByOrderByIdAsc();
+
+    /**
+     * One fruit, without loading the entity.
+     * @param id fruit id
+     * @return fruit, or empty if there is no such fruit
+     */
+    @Cacheable(cacheNames = "fruit", key = "#p0")
+    Optional<FruitView> findViewById(Long id);
+
+    /**
+     * Version of one fruit, without loading the entity.
+     * @param id fruit id
+     * @return version, or empty if there is no such fruit
+     */
+    @Query("select f.version from Fruit f where f.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    /**
+     * Version of the whole table, a counter that every write increments, so
+     * reading it costs one primary key lookup however many fruits there are.
+     * @return catalog version
+     */
+    @Query(value = "select version from fruit_catalog where id = 1", nativeQuery = true)
+    long findCatalogVersion();
+
+    /**
+     * Increment the catalog version, in the transaction of a write. Writers
+     * queue on the row lock of the counter until that transaction ends.
+     */
+    @Modifying
+    @Query(value = "update fruit_catalog set version = version + 1 where id = 1", nativeQuery = true)
+    void incrementCatalogVersion();
+
+    @Override
+    @Caching(evict = {
+        @CacheEvict(cacheNames = "fruit", key = "#result.id"),
+        @CacheEvict(cacheNames = "fruitPages", allEntries = true)
+    })
+    <S extends Fruit> S save(S entity);
+
+    @Override
+    @Caching(evict = {
+        @CacheEvict(cacheNames = "fruit", key = "#p0"),
+        @CacheEvict(cacheNames = "fruitPages", allEntries = true)
+    })
+    void deleteById(Long id);
 }
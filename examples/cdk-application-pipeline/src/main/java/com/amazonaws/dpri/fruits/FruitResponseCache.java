@@ -0,0 +1,216 @@
+package com.amazonaws.dpri.fruits;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.cache.Cache;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.WebRequest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Serialized bodies of the GET responses of the API, so a repeated read is
+ * answered by copying bytes rather than by mapping and serializing fruits.
+ * Callers key a body by the endpoint, its parameters and the ETag of the
+ * data it was rendered from, which holds the classification flag state.
+ * A body of at least 'gzipMinSize' bytes is also kept gzip compressed, for
+ * clients that accept it. FruitController clears the cache on every write,
+ * once the write has committed, so only bodies of the current state stay
+ * cached; the 'fruits.response-cache.ttl' expiry bounds any body that
+ * outlives a clear anyway.
+ */
+public class FruitResponseCache {
+    /**
+     * Name of the cache, see FruitResponseCacheConfiguration.
+     */
+    static final String CACHE_NAME = "fruitResponses";
+
+    /**
+     * Cache of bodies.
+     */
+    private final Cache cache;
+
+    /**
+     * Writer configured like the one used for regular responses.
+     */
+    private final ObjectWriter writer;
+
+    /**
+     * Smallest body kept compressed too, or -1 to never compress.
+     */
+    private final long gzipMinSize;
+
+    /**
+     * Create the cache.
+     * @param c cache of bodies
+     * @param w writer for bodies
+     * @param gzipMin smallest body kept compressed too, or -1 to never compress
+     */
+    FruitResponseCache(final Cache c, final ObjectWriter w, final long gzipMin) {
+        this.cache = c;
+        this.writer = w;
+        this.gzipMinSize = gzipMin;
+    }
+
+    /**
+     * Get a body, serializing and caching it on a miss.
+     * @param key endpoint, parameters and ETag
+     * @param value renders the value to serialize
+     * @return body
+     */
+    public Body get(final String key, final Supplier<?> value) {
+        return cache.get(key, () -> serialize(value.get()));
+    }
+
+    /**
+     * Get a body if it is cached.
+     * @param key endpoint, parameters and ETag
+     * @return body, or null on a miss
+     */
+    public Body get(final String key) {
+        return cache.get(key, Body.class);
+    }
+
+    /**
+     * Serialize and cache a body.
+     * @param key endpoint, parameters and ETag
+     * @param value value to serialize
+     * @return body
+     */
+    public Body put(final String key, final Object value) {
+        Body body = serialize(value);
+        cache.put(key, body);
+        return body;
+    }
+
+    /**
+     * ETag to check and send for a request. Clients accepting gzip may get
+     * the compressed variant, which is not byte for byte the representation
+     * tagged by the strong ETag, so they get it as a weak one. A weak ETag
+     * in If-None-Match still matches either.
+     * @param strong strong ETag of the body
+     * @param request request answered
+     * @return ETag
+     */
+    public String etag(final String strong, final WebRequest request) {
+        return gzipMinSize >= 0 && acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING)) ? "W/" + strong : strong;
+    }
+
+    /**
+     * Response with a body, compressed when the client accepts gzip and the
+     * body has a compressed variant.
+     * @param body body
+     * @param etag ETag from {@link #etag(String, WebRequest)}
+     * @param request request answered
+     * @return response
+     */
+    public ResponseEntity<byte[]> toResponse(final Body body, final String etag, final WebRequest request) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).eTag(etag);
+        if (gzipMinSize < 0) {
+            return response.body(body.json);
+        }
+        response.varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (body.gzip != null && acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(body.gzip);
+        }
+        return response.body(body.json);
+    }
+
+    /**
+     * Drop every body, after a write. Within a transaction, only once it
+     * commits: cleared earlier, a concurrent read of the state before the
+     * write could cache its body again until the next write.
+     */
+    public void clear() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cache.invalidate();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // invalidate, not clear, which a transaction-aware cache would defer to a synchronization never run
+                cache.invalidate();
+            }
+        });
+    }
+
+    private Body serialize(final Object value) {
+        try {
+            byte[] json = writer.writeValueAsBytes(value);
+            return new Body(json, gzipMinSize >= 0 && json.length >= gzipMinSize ? gzip(json) : null);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Cannot serialize " + value.getClass().getSimpleName(), ex);
+        }
+    }
+
+    private static byte[] gzip(final byte[] json) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(json);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Serialized body, with its compressed variant when it is large enough.
+     */
+    public static final class Body {
+        /**
+         * JSON.
+         */
+        private final byte[] json;
+
+        /**
+         * Gzip compressed JSON, or null.
+         */
+        private final byte[] gzip;
+
+        private Body(final byte[] jsonBytes, final byte[] gzipBytes) {
+            this.json = jsonBytes;
+            this.gzip = gzipBytes;
+        }
+
+        /**
+         * Bytes held, to weigh the body in the cache.
+         * @return size in bytes
+         */
+        int size() {
+            return json.length + (gzip == null ? 0 : gzip.length);
+        }
+    }
+
+    /**
+     * Whether an Accept-Encoding header lists gzip, or any encoding, without q=0.
+     */
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim();
+            if (name.equals("gzip") || name.equals("*")) {
+                for (int i = 1; i < parameters.length; i++) {
+                    if (parameters[i].trim().matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,68 @@
+package com.amazonaws.dpri.fruits;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.support.NoOpCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Cache of serialized response bodies for the servlet variant, configured by
+ * the 'fruits.response-cache' properties. It holds bytes rather than entries,
+ * so unlike the caches in spring.cache.cache-names it is bounded by size,
+ * and like them its entries expire.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class FruitResponseCacheConfiguration {
+
+    /**
+     * Response cache, which never holds a body when disabled.
+     * @param cacheManager cache manager holding the cache
+     * @param objectMapper mapper used for regular responses
+     * @param enabled whether bodies are cached
+     * @param gzipEnabled whether large bodies are kept compressed too
+     * @param gzipMinSize smallest body kept compressed
+     * @return response cache
+     */
+    @Bean
+    FruitResponseCache fruitResponseCache(
+            final CacheManager cacheManager,
+            final ObjectMapper objectMapper,
+            @Value("${fruits.response-cache.enabled:true}") final boolean enabled,
+            @Value("${fruits.response-cache.gzip.enabled:true}") final boolean gzipEnabled,
+            @Value("${fruits.response-cache.gzip.min-size:2KB}") final DataSize gzipMinSize) {
+        Cache cache = enabled ? cacheManager.getCache(FruitResponseCache.CACHE_NAME) : null;
+        return new FruitResponseCache(cache == null ? new NoOpCache(FruitResponseCache.CACHE_NAME) : cache,
+                objectMapper.writer(), gzipEnabled ? gzipMinSize.toBytes() : -1);
+    }
+
+    /**
+     * Add the response cache to the Caffeine cache manager, weighed by the
+     * bytes of its bodies.
+     * @param maxSize bytes of bodies kept
+     * @param ttl time a body is kept after it was cached
+     * @return customizer
+     */
+    @Bean
+    CacheManagerCustomizer<CaffeineCacheManager> fruitResponseCacheCustomizer(
+            @Value("${fruits.response-cache.max-size:64MB}") final DataSize maxSize,
+            @Value("${fruits.response-cache.ttl:60s}") final Duration ttl) {
+        return cacheManager -> cacheManager.registerCustomCache(FruitResponseCache.CACHE_NAME, Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .expireAfterWrite(ttl)
+                .<Object, Object>weigher((key, body) -> key.toString().length() + ((FruitResponseCache.Body) body).size())
+                .recordStats()
+                .build());
+    }
+}
@@ -0,0 +1,52 @@
+package com.amazonaws.dpri.fruits;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+/**
+ * Reflection and resources a native image of the fruit API needs beyond what
+ * Spring AOT finds on its own. Entities, controllers and repositories are
+ * processed by AOT; these are the types and files reached by name or by
+ * reflection at runtime.
+ */
+class FruitRuntimeHints implements RuntimeHintsRegistrar {
+
+    /**
+     * Liquibase changes used by the changelog. Liquibase creates them by name
+     * and sets their properties through their getters and setters.
+     */
+    private static final String[] LIQUIBASE_CHANGES = {
+        "liquibase.change.core.CreateTableChange",
+        "liquibase.change.core.AddColumnChange",
+        "liquibase.change.core.CreateIndexChange",
+        "liquibase.change.core.InsertDataChange",
+        "liquibase.change.core.UpdateDataChange",
+        "liquibase.change.ColumnConfig",
+        "liquibase.change.AddColumnConfig",
+        "liquibase.change.ConstraintsConfig",
+    };
+
+    @Override
+    public void registerHints(final RuntimeHints hints, final ClassLoader classLoader) {
+        // written and read by ObjectMappers outside of Spring MVC message conversion
+        BindingReflectionHintsRegistrar bindings = new BindingReflectionHintsRegistrar();
+        bindings.registerReflectionHints(hints.reflection(), FruitDTO.class, FruitImportResult.class, FruitPage.class);
+
+        // projection built by Spring Data from its constructor
+        hints.reflection().registerType(FruitView.class,
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+
+        hints.resources().registerPattern("db/changelog/*.yaml");
+        for (String change : LIQUIBASE_CHANGES) {
+            hints.reflection().registerType(TypeReference.of(change),
+                    MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+
+        // springdoc serves the swagger-ui webjar and reads its version from the webjar pom
+        hints.resources().registerPattern("META-INF/resources/webjars/swagger-ui/*/*");
+        hints.resources().registerPattern("META-INF/maven/org.webjars/swagger-ui/pom.properties");
+    }
+}
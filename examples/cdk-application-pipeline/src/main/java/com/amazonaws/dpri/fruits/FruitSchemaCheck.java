@@ -0,0 +1,142 @@
+package com.amazonaws.dpri.fruits;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.stereotype.Component;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+/**
+ * Schema check for instances started with spring.liquibase.enabled=false,
+ * which leave migrations to a run with --migrate-only. Instead of taking the
+ * changelog lock and validating checksums like Liquibase, it reads the
+ * applied change sets in one query and refuses to start while a change set
+ * of the changelog is missing, so an instance never serves on a schema older
+ * than its code. Change sets applied by a newer version are ignored, which
+ * keeps the old instances of a rolling deployment running.
+ *
+ * The changelog, its table and the database are the ones Liquibase would
+ * use with the same spring.liquibase properties, so the check also covers
+ * the reactive variant, which has no DataSource and sets spring.liquibase.url.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.liquibase.enabled", havingValue = "false")
+// not bound by Spring Boot while Liquibase is disabled
+@EnableConfigurationProperties(LiquibaseProperties.class)
+public class FruitSchemaCheck implements InitializingBean {
+    /**
+     * Logger for the result of the check.
+     */
+    private static final Log LOG = LogFactory.getLog(FruitSchemaCheck.class);
+
+    /**
+     * Template for the query.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Changelog the schema must be migrated to.
+     */
+    private final Resource changeLog;
+
+    /**
+     * Change sets recorded by Liquibase, in its table.
+     */
+    private final String appliedChangeSets;
+
+    @Autowired
+    FruitSchemaCheck(final ObjectProvider<DataSource> dataSource, final LiquibaseProperties liquibase,
+            final ResourceLoader resourceLoader) {
+        this(liquibaseDataSource(dataSource, liquibase), resourceLoader.getResource(liquibase.getChangeLog()),
+                changeLogTable(liquibase));
+    }
+
+    FruitSchemaCheck(final DataSource dataSource, final Resource changeLog, final String changeLogTable) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.changeLog = changeLog;
+        this.appliedChangeSets = "select id, author from " + changeLogTable;
+    }
+
+    private static DataSource liquibaseDataSource(final ObjectProvider<DataSource> dataSource, final LiquibaseProperties liquibase) {
+        if (liquibase.getUrl() == null) {
+            return dataSource.getObject();
+        }
+        return DataSourceBuilder.create()
+                .type(SimpleDriverDataSource.class)
+                .url(liquibase.getUrl())
+                .username(liquibase.getUser())
+                .password(liquibase.getPassword())
+                .build();
+    }
+
+    private static String changeLogTable(final LiquibaseProperties liquibase) {
+        String schema = liquibase.getLiquibaseSchema() != null ? liquibase.getLiquibaseSchema() : liquibase.getDefaultSchema();
+        return schema == null ? liquibase.getDatabaseChangeLogTable() : schema + "." + liquibase.getDatabaseChangeLogTable();
+    }
+
+    /**
+     * Fail unless every change set of the changelog is applied.
+     * @throws IOException when the changelog cannot be read
+     */
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        Set<String> missing = changeSets();
+        int expected = missing.size();
+        try {
+            missing.removeAll(jdbcTemplate.query(appliedChangeSets,
+                    (row, rowNum) -> row.getString("id") + "::" + row.getString("author")));
+        } catch (DataAccessException ex) {
+            throw new IllegalStateException("No Liquibase changelog table, migrate the database with --migrate-only", ex);
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Change sets " + missing + " of " + changeLog.getDescription()
+                    + " are not applied, migrate the database with --migrate-only");
+        }
+        LOG.info("Schema has all " + expected + " change sets of " + changeLog.getDescription());
+    }
+
+    /**
+     * Change sets of the changelog.
+     * @return id::author of each change set, in changelog order
+     * @throws IOException when the changelog cannot be read
+     */
+    Set<String> changeSets() throws IOException {
+        Map<String, List<Map<String, Map<String, Object>>>> document;
+        try (InputStream in = changeLog.getInputStream()) {
+            document = new Yaml(new SafeConstructor(new LoaderOptions())).load(in);
+        }
+        Set<String> changeSets = new LinkedHashSet<>();
+        for (Map<String, Map<String, Object>> entry : document.get("databaseChangeLog")) {
+            if (entry.containsKey("include") || entry.containsKey("includeAll")) {
+                throw new IllegalStateException("Included changelogs are not checked, list the change sets in " + changeLog.getDescription());
+            }
+            Map<String, Object> changeSet = entry.get("changeSet");
+            if (changeSet != null) {
+                changeSets.add(changeSet.get("id") + "::" + changeSet.get("author"));
+            }
+        }
+        return changeSets;
+    }
+}
@@ -0,0 +1,76 @@
+package com.amazonaws.dpri.fruits;
+
+/**
+ * Read-only projection of a fruit, built by the query itself. Unlike a
+ * loaded Fruit it is not tracked by the persistence context, so reads pay
+ * for neither entity snapshots nor dirty checking at flush, and it is
+ * immutable, so it is safe to share from the cache.
+ */
+public class FruitView {
+  /**
+   * Unique ID of the fruit.
+   */
+  private final Long id;
+
+  /**
+   * Name of the fruit.
+   */
+  private final String name;
+
+  /**
+   * Classification of the fruit.
+   */
+  private final FruitClassification classification;
+
+  /**
+   * Version of the fruit, for ETags.
+   */
+  private final Long version;
+
+  /**
+   * Create a view. Parameter names are the entity properties Spring Data
+   * selects for the projection, so they must not be renamed.
+   * @param id
+   * @param name
+   * @param classification
+   * @param version
+   */
+  public FruitView(final Long id, final String name, final FruitClassification classification, final Long version) {
+    this.id = id;
+    this.name = name;
+    this.classification = classification;
+    this.version = version;
+  }
+
+  /**
+   * Get the ID.
+   * @return id
+   */
+  public Long getId() {
+    return this.id;
+  }
+
+  /**
+   * Get the name.
+   * @return name
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Get the classification.
+   * @return classification
+   */
+  public FruitClassification getClassification() {
+    return this.classification;
+  }
+
+  /**
+   * Get the version.
+   * @return version
+   */
+  public Long getVersion() {
+    return this.version;
+  }
+}
@@ -0,0 +1,204 @@
+package com.amazonaws.dpri.fruits;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebInputException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Non-blocking API controller for fruits, active when the application runs
+ * as a reactive web application. Same routes, representations, ETags and
+ * feature flags as FruitController.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveFruitController {
+    /**
+     * R2DBC repository for fruits.
+     */
+    private final ReactiveFruitRepository repository;
+
+    /**
+     * Logic to map between entities and DTOs
+     */
+    private final FruitMapper mapper;
+
+    /**
+     * Fruits per import chunk when the client does not ask for a size.
+     */
+    private final int defaultChunkSize;
+
+    ReactiveFruitController(final ReactiveFruitRepository r, final FruitMapper m,
+            @Value("${fruits.import.chunk-size:500}") final int chunkSize) {
+        this.repository = r;
+        this.mapper = m;
+        this.defaultChunkSize = chunkSize;
+    }
+
+    /**
+     * Whether classifications are enabled, resolved once per request off the
+     * event loop: a flag missing from the AppConfig snapshot is fetched from
+     * the agent with a blocking call.
+     */
+    private Mono<Boolean> classificationEnabled() {
+        return Mono.fromCallable(mapper::isClassificationEnabled).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Page of fruits, optionally filtered by classification and by the start
+     * of the name, like FruitController.
+     */
+    @GetMapping("/api/fruits")
+    Mono<FruitPage> page(
+            @RequestParam(defaultValue = "0") final long after,
+            @RequestParam(defaultValue = "" + FruitController.DEFAULT_LIMIT) final int limit,
+            @RequestParam(name = "classification", required = false) final FruitClassification filter,
+            @RequestParam(required = false) final String namePrefix,
+            final ServerWebExchange exchange) {
+        int size = Math.max(1, Math.min(limit, FruitController.MAX_LIMIT));
+        return classificationEnabled().flatMap(classification -> repository.findCatalogVersion().flatMap(version -> {
+            if (exchange.checkNotModified(FruitController.etag(String.valueOf(version), classification))) {
+                return Mono.empty();
+            }
+            // ask for one more row than the page holds to know whether there is a next page
+            return repository.findPage(classification ? filter : null,
+                    StringUtils.hasLength(namePrefix) ? namePrefix : null, after, size + 1)
+                    .map(fruit -> mapper.toDto(fruit, classification))
+                    .collectList()
+                    .map(items -> items.size() > size
+                            ? new FruitPage(items.subList(0, size), items.get(size - 1).getId())
+                            : new FruitPage(items, null));
+        }));
+    }
+
+    /**
+     * Whole table in one response, for clients written before pagination.
+     * The array is encoded as the rows arrive, and the query only runs when
+     * the ETag does not match.
+     */
+    @GetMapping(path = "/api/fruits", params = "unpaginated=true")
+    Mono<ResponseEntity<Flux<FruitDTO>>> all() {
+        return classificationEnabled().flatMap(classification -> repository.findCatalogVersion().map(version -> ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(FruitController.etag(String.valueOf(version), classification))
+                .body(repository.findAll().map(fruit -> mapper.toDto(fruit, classification)))));
+    }
+
+    @PostMapping("/api/fruits")
+    Mono<FruitDTO> newFruit(@RequestBody final FruitDTO fruit) {
+        return classificationEnabled().flatMap(classification -> withCurrentVersion(mapper.toEntity(fruit, classification))
+                .flatMap(repository::save)
+                .map(saved -> mapper.toDto(saved, classification)));
+    }
+
+    /**
+     * Bulk import of newline delimited fruits, answered with one result line
+     * per chunk as the chunks are inserted. Fruits are decoded as they arrive
+     * and each chunk is one batch statement in one transaction.
+     */
+    @PostMapping(path = "/api/fruits/import", consumes = FruitController.NDJSON, produces = FruitController.NDJSON)
+    Flux<FruitImportResult> importFruits(
+            @RequestParam(required = false) final Integer chunkSize,
+            @RequestBody final Flux<FruitDTO> fruits) {
+        int size = chunkSize == null ? defaultChunkSize : Math.max(1, Math.min(chunkSize, FruitController.MAX_CHUNK_SIZE));
+        AtomicInteger chunks = new AtomicInteger();
+        return classificationEnabled().flatMapMany(classification -> fruits.map(dto -> mapper.toEntity(dto, classification)))
+                .buffer(size)
+                .concatMap(chunk -> {
+                    // every chunk but the last is full, so the offset follows from the index
+                    int index = chunks.getAndIncrement();
+                    long offset = (long) index * size;
+                    return repository.insertAll(chunk)
+                            .map(inserted -> new FruitImportResult(index, offset, inserted, null))
+                            .onErrorResume(DataAccessException.class, ex ->
+                                    Mono.just(new FruitImportResult(index, offset, 0, ex.getMostSpecificCause().getMessage())));
+                })
+                .onErrorResume(ex -> ex instanceof ServerWebInputException || ex instanceof DecodingException, ex -> {
+                    // the rest of the stream cannot be trusted, report the fruits read so far as failed
+                    int index = chunks.get();
+                    return Mono.just(new FruitImportResult(index, (long) index * size, 0, "Invalid input: " + invalidInput(ex)));
+                });
+    }
+
+    private static String invalidInput(final Throwable ex) {
+        Throwable cause = NestedExceptionUtils.getMostSpecificCause(ex);
+        return cause instanceof JsonProcessingException
+                ? ((JsonProcessingException) cause).getOriginalMessage()
+                : cause.getMessage();
+    }
+
+    /**
+     * Answer with 304 from the version column alone when the client already
+     * has the current version, otherwise load and render the fruit.
+     */
+    @GetMapping("/api/fruits/{id}")
+    Mono<ResponseEntity<FruitDTO>> one(@PathVariable final Long id, final ServerWebExchange exchange) {
+        return classificationEnabled().flatMap(classification -> repository.findVersionById(id)
+                .switchIfEmpty(Mono.error(() -> new FruitNotFoundException(id)))
+                .flatMap(version -> {
+                    if (exchange.checkNotModified(FruitController.etag(String.valueOf(version), classification))) {
+                        return Mono.empty();
+                    }
+                    return repository.findById(id)
+                            .switchIfEmpty(Mono.error(() -> new FruitNotFoundException(id)))
+                            // tag with the version actually rendered, which may differ from the one checked above
+                            .map(fruit -> ResponseEntity.ok()
+                                    .eTag(FruitController.etag(String.valueOf(fruit.getVersion()), classification))
+                                    .body(mapper.toDto(fruit, classification)));
+                }));
+    }
+
+    @PutMapping("/api/fruits/{id}")
+    Mono<FruitDTO> replaceFruit(
+            @RequestBody final FruitDTO newFruit,
+            @PathVariable final Long id) {
+        newFruit.setId(id);
+        return newFruit(newFruit);
+    }
+
+    /**
+     * Writes replace whatever is stored: take the stored version, or create
+     * a new fruit if the id does not exist.
+     */
+    private Mono<Fruit> withCurrentVersion(final Fruit entity) {
+        if (entity.getId() == null) {
+            return Mono.just(entity);
+        }
+        return repository.findVersionById(entity.getId())
+                .map(version -> {
+                    entity.setVersion(version);
+                    return entity;
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    entity.setId(null);
+                    return entity;
+                }));
+    }
+
+    @DeleteMapping("/api/fruits/{id}")
+    Mono<Void> deleteFruit(@PathVariable final Long id) {
+        return repository.deleteById(id);
+    }
+}
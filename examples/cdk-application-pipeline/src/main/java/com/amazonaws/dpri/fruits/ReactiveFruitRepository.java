@@ -0,0 +1,248 @@
+package com.amazonaws.dpri.fruits;
+
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.binding.BindMarkers;
+import org.springframework.r2dbc.core.binding.BindMarkersFactoryResolver;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Readable;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * R2DBC repository for fruits, used by the reactive variant of the API.
+ * Same table and the same queries as FruitRepository, but no call blocks
+ * the calling thread. Fruits are not cached here.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveFruitRepository {
+    /**
+     * Columns of a fruit, in the order read by toFruit.
+     */
+    private static final String COLUMNS = "select id, name, classification, version from fruit";
+
+    /**
+     * Non-blocking SQL client.
+     */
+    private final DatabaseClient client;
+
+    /**
+     * One transaction per write.
+     */
+    private final TransactionalOperator transactionalOperator;
+
+    /**
+     * Batch insert statement. Built outside the client, so it is written
+     * with the placeholders of the driver in use, like $1 or ?.
+     */
+    private final String batchInsert;
+
+    ReactiveFruitRepository(final DatabaseClient c, final ConnectionFactory f, final ReactiveTransactionManager t) {
+        this.client = c;
+        this.transactionalOperator = TransactionalOperator.create(t);
+        BindMarkers markers = BindMarkersFactoryResolver.resolve(f).create();
+        this.batchInsert = "insert into fruit (name, classification, version) values ("
+                + markers.next().getPlaceholder() + ", " + markers.next().getPlaceholder() + ", 0)";
+    }
+
+    private static Fruit toFruit(final Readable row) {
+        Fruit fruit = new Fruit(row.get("name", String.class), classification(row.get("classification", String.class)));
+        fruit.setId(row.get("id", Long.class));
+        fruit.setVersion(row.get("version", Long.class));
+        return fruit;
+    }
+
+    private static FruitClassification classification(final String name) {
+        return name == null ? null : FruitClassification.valueOf(name);
+    }
+
+    private static String name(final FruitClassification classification) {
+        return classification == null ? null : classification.name();
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindFields(final DatabaseClient.GenericExecuteSpec spec, final Fruit fruit) {
+        return bind(bind(spec, "name", fruit.getName()), "classification", name(fruit.getClassification()));
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bind(final DatabaseClient.GenericExecuteSpec spec,
+            final String parameter, final String value) {
+        return value == null ? spec.bindNull(parameter, String.class) : spec.bind(parameter, value);
+    }
+
+    private static void bind(final Statement statement, final int index, final String value) {
+        if (value == null) {
+            statement.bindNull(index, String.class);
+        } else {
+            statement.bind(index, value);
+        }
+    }
+
+    /**
+     * Keyset page: fruits with an id after the cursor, optionally narrowed
+     * by idx_fruit_classification or by a range scan of idx_fruit_name.
+     * @param classification classification to match, or null for all
+     * @param prefix start of the name, matched literally, or null for all
+     * @param after cursor, exclusive
+     * @param limit maximum number of fruits
+     * @return fruits ordered by id
+     */
+    public Flux<Fruit> findPage(final FruitClassification classification, final String prefix, final long after, final int limit) {
+        StringBuilder sql = new StringBuilder(COLUMNS).append(" where id > :after");
+        if (classification != null) {
+            sql.append(" and classification = :classification");
+        }
+        if (prefix != null) {
+            // '!' rather than the usual backslash, which MySQL also treats as a string escape
+            sql.append(" and name like :prefix escape '!'");
+        }
+        DatabaseClient.GenericExecuteSpec spec = client.sql(sql.append(" order by id limit :limit").toString())
+                .bind("after", after)
+                .bind("limit", limit);
+        if (classification != null) {
+            spec = spec.bind("classification", classification.name());
+        }
+        if (prefix != null) {
+            spec = spec.bind("prefix", prefix.replaceAll("[!%_]", "!$0") + "%");
+        }
+        return spec.map(ReactiveFruitRepository::toFruit).all();
+    }
+
+    /**
+     * All fruits, emitted as the rows arrive from the database.
+     * @return fruits ordered by id
+     */
+    public Flux<Fruit> findAll() {
+        return client.sql(COLUMNS + " order by id")
+                .map(ReactiveFruitRepository::toFruit)
+                .all();
+    }
+
+    /**
+     * One fruit.
+     * @param id fruit id
+     * @return fruit, or empty if there is no such fruit
+     */
+    public Mono<Fruit> findById(final Long id) {
+        return client.sql(COLUMNS + " where id = :id")
+                .bind("id", id)
+                .map(ReactiveFruitRepository::toFruit)
+                .one();
+    }
+
+    /**
+     * Version of one fruit, without loading the rest of the row.
+     * @param id fruit id
+     * @return version, or empty if there is no such fruit
+     */
+    public Mono<Long> findVersionById(final Long id) {
+        return client.sql("select version from fruit where id = :id")
+                .bind("id", id)
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    /**
+     * Version of the whole table, see FruitRepository.findCatalogVersion.
+     * @return catalog version
+     */
+    public Mono<Long> findCatalogVersion() {
+        return client.sql("select version from fruit_catalog where id = 1")
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    private Mono<Void> incrementCatalogVersion() {
+        return client.sql("update fruit_catalog set version = version + 1 where id = 1").then();
+    }
+
+    /**
+     * Insert a fruit without an id, or update the fruit with its id and
+     * version, incrementing the version, and the catalog version in the same
+     * transaction.
+     * @param fruit fruit to save
+     * @return saved fruit with its id and new version
+     * @throws OptimisticLockingFailureException if the fruit was changed or deleted since its version was read
+     */
+    public Mono<Fruit> save(final Fruit fruit) {
+        return insertOrUpdate(fruit)
+                .flatMap(saved -> incrementCatalogVersion().thenReturn(saved))
+                .as(transactionalOperator::transactional);
+    }
+
+    private Mono<Fruit> insertOrUpdate(final Fruit fruit) {
+        if (fruit.getId() == null) {
+            return bindFields(client.sql("insert into fruit (name, classification, version) values (:name, :classification, 0)"), fruit)
+                    .filter(statement -> statement.returnGeneratedValues("id"))
+                    .map(row -> row.get(0, Long.class))
+                    .one()
+                    .map(id -> {
+                        fruit.setId(id);
+                        fruit.setVersion(0L);
+                        return fruit;
+                    });
+        }
+        return bindFields(client.sql("update fruit set name = :name, classification = :classification,"
+                + " version = version + 1 where id = :id and version = :version"), fruit)
+                .bind("id", fruit.getId())
+                .bind("version", fruit.getVersion())
+                .fetch()
+                .rowsUpdated()
+                .flatMap(updated -> {
+                    if (updated == 0) {
+                        return Mono.error(new OptimisticLockingFailureException("Fruit " + fruit.getId() + " was changed or deleted"));
+                    }
+                    fruit.setVersion(fruit.getVersion() + 1);
+                    return Mono.just(fruit);
+                });
+    }
+
+    /**
+     * Insert fruits as one batch statement in one transaction.
+     * @param fruits fruits without ids
+     * @return number of fruits inserted
+     */
+    public Mono<Integer> insertAll(final List<Fruit> fruits) {
+        return client.inConnection(connection -> Flux.from(batch(connection, fruits).execute())
+                .flatMap(Result::getRowsUpdated)
+                .reduce(0L, Long::sum)
+                .map(Long::intValue))
+                .flatMap(inserted -> incrementCatalogVersion().thenReturn(inserted))
+                .as(transactionalOperator::transactional);
+    }
+
+    private Statement batch(final Connection connection, final List<Fruit> fruits) {
+        Statement statement = connection.createStatement(batchInsert);
+        for (int i = 0; i < fruits.size(); i++) {
+            if (i > 0) {
+                statement.add();
+            }
+            bind(statement, 0, fruits.get(i).getName());
+            bind(statement, 1, name(fruits.get(i).getClassification()));
+        }
+        return statement;
+    }
+
+    /**
+     * Delete a fruit, if it exists, and increment the catalog version.
+     * @param id fruit id
+     * @return completion
+     */
+    public Mono<Void> deleteById(final Long id) {
+        return client.sql("delete from fruit where id = :id")
+                .bind("id", id)
+                .then()
+                .then(incrementCatalogVersion())
+                .as(transactionalOperator::transactional);
+    }
+}
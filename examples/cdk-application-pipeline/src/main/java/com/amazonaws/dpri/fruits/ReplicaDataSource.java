@@ -0,0 +1,211 @@
+package com.amazonaws.dpri.fruits;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * Connections for read-only transactions: from the replica pool while the
+ * replica is at most 'maxLag' behind the primary, otherwise from the primary
+ * pool. Replication lag is measured in the background with a query run on
+ * the replica, and is unknown, so too high, until the first measurement
+ * succeeds or after one fails.
+ *
+ * Once bound to a MeterRegistry, reads are counted in 'fruits.datasource.reads',
+ * tagged with the pool that served them and why they fell back to the primary,
+ * and the last measured lag is the gauge 'fruits.datasource.replica.lag'.
+ */
+public class ReplicaDataSource extends AbstractDataSource implements MeterBinder, AutoCloseable {
+    /**
+     * Logger for lag measurements and fallbacks.
+     */
+    private static final Log LOG = LogFactory.getLog(ReplicaDataSource.class);
+
+    /**
+     * Pool of connections to the replica.
+     */
+    private final DataSource replica;
+
+    /**
+     * Pool of connections to the primary, used when the replica is behind.
+     */
+    private final DataSource primary;
+
+    /**
+     * Query returning the replication lag in seconds, run on the replica.
+     */
+    private final String lagQuery;
+
+    /**
+     * Column of the lag query holding the lag.
+     */
+    private final String lagColumn;
+
+    /**
+     * Highest lag at which reads still go to the replica.
+     */
+    private final Duration maxLag;
+
+    /**
+     * Time between two lag measurements.
+     */
+    private final Duration lagCheckInterval;
+
+    /**
+     * Last measured lag in seconds, NaN when unknown.
+     */
+    private volatile double lagSeconds = Double.NaN;
+
+    /**
+     * Runs the lag measurements, once started.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Meters are registered here, and recorded in every registry this data source is bound to.
+     */
+    private final CompositeMeterRegistry registry = new CompositeMeterRegistry();
+
+    /**
+     * Reads served by the replica.
+     */
+    private final Counter replicaReads = readCounter("replica", "none");
+
+    /**
+     * Reads sent to the primary because the replica was too far behind.
+     */
+    private final Counter laggingReads = readCounter("primary", "lag");
+
+    /**
+     * Reads sent to the primary because the replica refused a connection.
+     */
+    private final Counter unavailableReads = readCounter("primary", "unavailable");
+
+    ReplicaDataSource(final DataSource r, final DataSource p, final String query, final String column,
+            final Duration max, final Duration interval) {
+        this.replica = r;
+        this.primary = p;
+        this.lagQuery = query;
+        this.lagColumn = column;
+        this.maxLag = max;
+        this.lagCheckInterval = interval;
+    }
+
+    private Counter readCounter(final String pool, final String fallback) {
+        return Counter.builder("fruits.datasource.reads")
+                .description("Connections handed to read-only transactions")
+                .tag("pool", pool)
+                .tag("fallback", fallback)
+                .register(registry);
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry meterRegistry) {
+        registry.add(meterRegistry);
+        Gauge.builder("fruits.datasource.replica.lag", this, source -> source.lagSeconds)
+                .description("Replication lag of the replica at the last measurement")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    /**
+     * Start measuring the replication lag in the background.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkLag, 0, lagCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Measure the replication lag now.
+     */
+    public void checkLag() {
+        double lag = Double.NaN;
+        try (Connection connection = replica.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet result = statement.executeQuery(lagQuery)) {
+            // no row or no value means the replica is not replicating
+            Object value = result.next() ? result.getObject(lagColumn) : null;
+            if (value instanceof Number) {
+                lag = ((Number) value).doubleValue();
+            }
+        } catch (SQLException ex) {
+            LOG.warn("Unable to measure the replication lag, reading from the primary: " + ex.getMessage());
+        }
+        if (isCurrent(lag) != isCurrent(lagSeconds)) {
+            LOG.info(isCurrent(lag) ? "Reading from the replica" : "Replica lag is " + lag + " s, reading from the primary");
+        }
+        lagSeconds = lag;
+    }
+
+    private boolean isCurrent(final double lag) {
+        // false for NaN, an unknown lag
+        return lag * 1000 <= maxLag.toMillis();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException {
+        return route(pool -> pool.getConnection(username, password));
+    }
+
+    private Connection route(final ConnectionOpener opener) throws SQLException {
+        if (!isCurrent(lagSeconds)) {
+            laggingReads.increment();
+            return opener.open(primary);
+        }
+        try {
+            Connection connection = opener.open(replica);
+            replicaReads.increment();
+            return connection;
+        } catch (SQLException ex) {
+            LOG.warn("Replica refused a connection, reading from the primary: " + ex.getMessage());
+            unavailableReads.increment();
+            return opener.open(primary);
+        }
+    }
+
+    /**
+     * Opens a connection from one of the pools, with or without credentials.
+     */
+    @FunctionalInterface
+    private interface ConnectionOpener {
+        Connection open(DataSource pool) throws SQLException;
+    }
+}
@@ -0,0 +1,111 @@
+package com.amazonaws.dpri.fruits;
+
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Sends read-only transactions to a read replica and everything else to the
+ * primary, when 'fruits.datasource.replica.url' is set. The primary pool is
+ * configured by the usual 'spring.datasource' properties, the replica pool
+ * by 'fruits.datasource.replica', with Hikari settings under '.hikari' for
+ * both. Each pool has its own 'hikaricp' metrics, tagged with its pool name.
+ *
+ * The routing data source hands out lazy connections, so the choice of pool
+ * is made at the first statement, once the transaction is known to be
+ * read-only, rather than when the transaction begins.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty("fruits.datasource.replica.url")
+public class ReplicaDataSourceConfiguration {
+
+    /**
+     * Pool of connections to the primary.
+     * @param properties spring.datasource properties
+     * @return primary pool
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaryDataSource(final DataSourceProperties properties) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        pool.setPoolName("primary");
+        return pool;
+    }
+
+    /**
+     * Pool of connections to the replica, with the primary credentials unless
+     * the replica has its own.
+     * @param url JDBC URL of the replica
+     * @param username replica user, or empty for the primary user
+     * @param password replica password
+     * @param properties spring.datasource properties
+     * @return replica pool
+     */
+    @Bean
+    @ConfigurationProperties("fruits.datasource.replica.hikari")
+    HikariDataSource replicaPoolDataSource(
+            @Value("${fruits.datasource.replica.url}") final String url,
+            @Value("${fruits.datasource.replica.username:}") final String username,
+            @Value("${fruits.datasource.replica.password:}") final String password,
+            final DataSourceProperties properties) {
+        HikariDataSource pool = DataSourceBuilder.create().type(HikariDataSource.class)
+                .url(url)
+                .username(username.isEmpty() ? properties.determineUsername() : username)
+                .password(username.isEmpty() ? properties.determinePassword() : password)
+                .build();
+        pool.setPoolName("replica");
+        pool.setReadOnly(true);
+        return pool;
+    }
+
+    /**
+     * Connections for read-only transactions, from the replica while it keeps
+     * up with the primary.
+     * @param replica replica pool
+     * @param primary primary pool
+     * @param lagQuery query run on the replica that returns its lag in seconds
+     * @param lagColumn column of the lag query holding the lag
+     * @param maxLag highest lag at which reads still go to the replica
+     * @param lagCheckInterval time between two lag measurements
+     * @return replica data source
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    ReplicaDataSource replicaDataSource(
+            @Qualifier("replicaPoolDataSource") final DataSource replica,
+            @Qualifier("primaryDataSource") final DataSource primary,
+            @Value("${fruits.datasource.replica.lag-query:show replica status}") final String lagQuery,
+            @Value("${fruits.datasource.replica.lag-column:Seconds_Behind_Source}") final String lagColumn,
+            @Value("${fruits.datasource.replica.max-lag:2s}") final Duration maxLag,
+            @Value("${fruits.datasource.replica.lag-check-interval:5s}") final Duration lagCheckInterval) {
+        return new ReplicaDataSource(replica, primary, lagQuery, lagColumn, maxLag, lagCheckInterval);
+    }
+
+    /**
+     * Data source used by JPA, JDBC and Liquibase.
+     * @param primary primary pool
+     * @param replica connections for read-only transactions
+     * @return routing data source
+     */
+    @Bean
+    @Primary
+    DataSource dataSource(
+            @Qualifier("primaryDataSource") final DataSource primary,
+            @Qualifier("replicaDataSource") final DataSource replica) {
+        LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(primary);
+        routing.setReadOnlyDataSource(replica);
+        return routing;
+    }
+}
@@ -0,0 +1,80 @@
+package com.amazonaws.appconfigagent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.mock.env.MockEnvironment;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class AppConfigAgentInitializerTest {
+
+  private HttpServer agent;
+
+  private final AtomicReference<String> operations = new AtomicReference<>("{\"logLevel\": \"WARN\"}");
+
+  private final Logger root = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+
+  private Level originalLevel;
+
+  @BeforeEach
+  public void startAgent() throws IOException {
+    originalLevel = root.getLevel();
+    agent = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    agent.createContext("/applications/fruit-api/environments/test/configurations/operations", exchange -> {
+      byte[] body = operations.get().getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    agent.start();
+  }
+
+  @AfterEach
+  public void stopAgent() {
+    agent.stop(0);
+    root.setLevel(originalLevel);
+  }
+
+  @Test
+  public void shouldReapplyLogLevelAndPublishChanges() throws IOException {
+    MockEnvironment environment = new MockEnvironment()
+        .withProperty("appconfig-agent.port", String.valueOf(agent.getAddress().getPort()))
+        .withProperty("appconfig-agent.application", "fruit-api")
+        .withProperty("appconfig-agent.environment", "test")
+        .withProperty("appconfig-agent.refresh-interval-seconds", "0")
+        .withProperty("appconfig-agent.log-level-from.configuration", "operations");
+    List<AppConfigChangedEvent> events = new ArrayList<>();
+    try (GenericApplicationContext context = new GenericApplicationContext()) {
+      context.setEnvironment(environment);
+      new AppConfigAgentInitializer().initialize(context);
+      context.addApplicationListener((ApplicationListener<AppConfigChangedEvent>) events::add);
+      context.refresh();
+      assertThat(root.getLevel()).isEqualTo(Level.WARN);
+
+      operations.set("{\"logLevel\": \"DEBUG\"}");
+      ((AppConfigAgentPropertySource) environment.getPropertySources().get("appconfig")).refresh("operations");
+
+      assertThat(root.getLevel()).isEqualTo(Level.DEBUG);
+      assertThat(events).hasSize(1);
+      assertThat(events.get(0).getChangedKeys()).containsExactly("logLevel");
+    }
+  }
+}
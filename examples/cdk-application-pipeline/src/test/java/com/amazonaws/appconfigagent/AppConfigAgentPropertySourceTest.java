@@ -0,0 +1,254 @@
+package com.amazonaws.appconfigagent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class AppConfigAgentPropertySourceTest {
+
+  private HttpServer agent;
+
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private final AtomicReference<String> features = new AtomicReference<>(
+      "{\"classification\": {\"enabled\": true, \"color\": \"red\"}}");
+
+  private final AtomicBoolean hung = new AtomicBoolean();
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @BeforeEach
+  public void startAgent() throws IOException {
+    agent = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    agent.setExecutor(Executors.newCachedThreadPool());
+    agent.createContext("/applications/fruit-api/environments/test/configurations/features", exchange -> {
+      requests.incrementAndGet();
+      if (hung.get()) {
+        try {
+          release.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      byte[] body = features.get().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    agent.start();
+  }
+
+  @AfterEach
+  public void stopAgent() {
+    release.countDown();
+    agent.stop(0);
+  }
+
+  private AppConfigAgentPropertySource propertySource(long refreshIntervalSeconds) {
+    AppConfigAgentClient client = new AppConfigAgentClient("localhost", agent.getAddress().getPort(), "fruit-api", "test",
+        Duration.ofSeconds(1), Duration.ofSeconds(1), 2);
+    return new AppConfigAgentPropertySource("appconfig", client, refreshIntervalSeconds);
+  }
+
+  @Test
+  public void shouldServeRepeatedLookupsFromSnapshot() {
+    AppConfigAgentPropertySource source = propertySource(0);
+
+    assertThat(source.getProperty("appconfig.features.classification")).isEqualTo(true);
+    assertThat(source.getProperty("appconfig.features.classification.color")).isEqualTo("red");
+    assertThat(source.getProperty("appconfig.features.missing:true")).isEqualTo(true);
+    assertThat(requests.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldIgnoreOtherPrefixes() {
+    AppConfigAgentPropertySource source = propertySource(0);
+
+    assertThat(source.getProperty("spring.application.name")).isNull();
+    assertThat(requests.get()).isZero();
+  }
+
+  @Test
+  public void shouldRejectMalformedNames() {
+    AppConfigAgentPropertySource source = propertySource(0);
+
+    assertThat(source.getProperty("appconfig.features")).isNull();
+    assertThat(source.getProperty("appconfig..classification")).isNull();
+    assertThat(source.getProperty("appconfig.features.:true")).isNull();
+    assertThat(source.getProperty("appconfig-agent.enabled")).isNull();
+    assertThat(requests.get()).isZero();
+  }
+
+  @Test
+  public void shouldApplyDefaults() {
+    AppConfigAgentPropertySource source = propertySource(0);
+
+    assertThat(source.getProperty("appconfig.features.missing")).isEqualTo(false);
+    assertThat(source.getProperty("appconfig.features.missing.color")).isNull();
+    assertThat(source.getProperty("appconfig.features.missing.color:blue")).isEqualTo("blue");
+    assertThat(source.getProperty("appconfig.features.classification.color:blue")).isEqualTo("red");
+  }
+
+  @Test
+  public void shouldNotifyChangedKeysOnRefresh() throws IOException {
+    AppConfigAgentPropertySource source = propertySource(0);
+    List<AppConfigChangedEvent> events = new ArrayList<>();
+    source.setChangeListener(events::add);
+
+    source.getSnapshot("features");
+    source.refresh("features");
+    assertThat(events).isEmpty();
+
+    features.set("{\"classification\": {\"enabled\": false}, \"seasonal\": {\"enabled\": true}}");
+    source.refresh("features");
+
+    assertThat(events).hasSize(1);
+    assertThat(events.get(0).getConfigurationName()).isEqualTo("features");
+    assertThat(events.get(0).getChangedKeys()).containsExactlyInAnyOrder("classification", "seasonal");
+    assertThat(source.getProperty("appconfig.features.seasonal")).isEqualTo(true);
+  }
+
+  @Test
+  public void shouldServeStaleValueWhenAgentHangs() throws IOException {
+    AppConfigAgentPropertySource source = propertySource(0);
+    assertThat(source.getProperty("appconfig.features.classification")).isEqualTo(true);
+    assertThat(source.isStale("features")).isFalse();
+
+    hung.set(true);
+    long start = System.nanoTime();
+    try {
+      source.refresh("features");
+    } catch (IOException expected) {
+      // read timeout
+    }
+
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(3));
+    assertThat(source.isStale("features")).isTrue();
+    assertThat(source.getLastRefreshed("features")).isPresent();
+    assertThat(source.getProperty("appconfig.features.classification")).isEqualTo(true);
+  }
+
+  @Test
+  public void shouldBoundLookupLatencyWhenAgentHangsOnFirstFetch() throws Exception {
+    AppConfigAgentPropertySource source = propertySource(0);
+    hung.set(true);
+
+    ExecutorService workers = Executors.newFixedThreadPool(16);
+    try {
+      List<Future<Object>> lookups = new ArrayList<>();
+      long start = System.nanoTime();
+      for (int i = 0; i < 16; i++) {
+        lookups.add(workers.submit(() -> source.getProperty("appconfig.features.classification:true")));
+      }
+      for (Future<Object> lookup : lookups) {
+        assertThat(lookup.get(3, TimeUnit.SECONDS)).isEqualTo(true);
+      }
+
+      assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(3));
+      // the bulkhead lets at most 2 lookups reach the agent, the rest get the default straight away
+      assertThat(requests.get()).isLessThanOrEqualTo(2);
+      assertThat(source.isStale("features")).isTrue();
+    } finally {
+      workers.shutdownNow();
+    }
+
+    long start = System.nanoTime();
+    assertThat(source.getProperty("appconfig.features.classification")).isEqualTo(false);
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(100));
+  }
+
+  @Test
+  public void shouldStartFromSnapshotFileWithoutAgent(@TempDir Path directory) throws IOException {
+    AppConfigSnapshotFile file = new AppConfigSnapshotFile(directory.resolve("snapshot.json"));
+    AppConfigAgentPropertySource previousRun = propertySource(0);
+    previousRun.restore(file);
+    assertThat(previousRun.getProperty("appconfig.features.classification.color")).isEqualTo("red");
+
+    hung.set(true);
+    AppConfigAgentPropertySource source = propertySource(0);
+    List<AppConfigChangedEvent> events = new ArrayList<>();
+    source.setChangeListener(events::add);
+    source.restore(file);
+    long start = System.nanoTime();
+
+    assertThat(source.getProperty("appconfig.features.classification.color")).isEqualTo("red");
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(100));
+    assertThat(source.isStale("features")).isTrue();
+    assertThat(requests.get()).isEqualTo(1);
+
+    hung.set(false);
+    features.set("{\"classification\": {\"enabled\": true, \"color\": \"green\"}}");
+    source.refresh("features");
+
+    assertThat(source.isStale("features")).isFalse();
+    assertThat(source.getProperty("appconfig.features.classification.color")).isEqualTo("green");
+    assertThat(events).hasSize(1);
+    assertThat(file.load().get("features").getContent()).containsKey("classification");
+  }
+
+  @Test
+  public void shouldRecordMetrics() throws IOException {
+    AppConfigAgentPropertySource source = propertySource(0);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    source.bindTo(registry);
+
+    source.getProperty("appconfig.features.classification");
+    source.getProperty("appconfig.features.classification.color");
+    hung.set(true);
+    try {
+      source.refresh("features");
+    } catch (IOException expected) {
+      // read timeout
+    }
+
+    assertThat(registry.get("appconfig.snapshot.lookups").tag("result", "hit").counter().count()).isEqualTo(1);
+    assertThat(registry.get("appconfig.snapshot.lookups").tag("result", "miss").counter().count()).isEqualTo(1);
+    assertThat(registry.get("appconfig.agent.fetch").tags("configuration", "features", "outcome", "success").timer().count()).isEqualTo(1);
+    assertThat(registry.get("appconfig.agent.errors").tags("configuration", "features", "cause", "timeout").counter().count()).isEqualTo(1);
+    assertThat(registry.get("appconfig.snapshot.age").tag("configuration", "features").gauge().value()).isGreaterThanOrEqualTo(0);
+    assertThat(registry.get("appconfig.snapshot.stale").tag("configuration", "features").gauge().value()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldRefreshInBackground() throws InterruptedException {
+    try (AppConfigAgentPropertySource source = propertySource(1)) {
+      source.start();
+      assertThat(source.getProperty("appconfig.features.classification")).isEqualTo(true);
+
+      features.set("{\"classification\": {\"enabled\": false}}");
+      long deadline = System.currentTimeMillis() + 5000;
+      while (Boolean.TRUE.equals(source.getProperty("appconfig.features.classification"))
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+
+      assertThat(source.getProperty("appconfig.features.classification")).isEqualTo(false);
+    }
+  }
+}
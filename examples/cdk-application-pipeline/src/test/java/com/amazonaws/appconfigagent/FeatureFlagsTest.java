@@ -0,0 +1,27 @@
+package com.amazonaws.appconfigagent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+public class FeatureFlagsTest {
+
+  @Test
+  public void shouldDefaultToDisabled() {
+    FeatureFlags flags = new FeatureFlags(new MockEnvironment(), "appconfig");
+
+    assertThat(flags.isEnabled("features", "classification")).isFalse();
+    assertThat(flags.getAttribute("features", "classification", "color", String.class, "none")).isEqualTo("none");
+  }
+
+  @Test
+  public void shouldReflectCurrentValue() {
+    MockEnvironment environment = new MockEnvironment().withProperty("appconfig.features.classification", "true");
+    FeatureFlags flags = new FeatureFlags(environment, "appconfig");
+    assertThat(flags.isEnabled("features", "classification")).isTrue();
+
+    environment.setProperty("appconfig.features.classification", "false");
+    assertThat(flags.isEnabled("features", "classification")).isFalse();
+  }
+}
@@ -0,0 +1,112 @@
+package com.amazonaws.dpri.fruits;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalAnswers.answersWithDelay;
+import static org.mockito.Mockito.doAnswer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "spring.cache.type=none",
+    "fruits.concurrency-limit.initial-limit=4",
+    "fruits.concurrency-limit.min-limit=1",
+    "fruits.concurrency-limit.max-limit=4",
+    "fruits.concurrency-limit.latency-target=50ms"
+})
+@ActiveProfiles("with-classification")
+@DirtiesContext
+public class ConcurrencyLimitTest {
+
+  private static final long SLOW_MILLIS = 2000;
+
+  @LocalServerPort
+  private int port;
+
+  @SpyBean
+  private FruitRepository repository;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Test
+  public void shouldRejectExcessRequestsFastAndShrinkLimitWhenRepositoryIsSlow() throws Exception {
+    HttpClient client = HttpClient.newHttpClient();
+    // warm up the server and the client before timing anything
+    client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/fruits/1")).build(), HttpResponse.BodyHandlers.discarding());
+    doAnswer(answersWithDelay(SLOW_MILLIS, invocation -> Optional.of(0L))).when(repository).findVersionById(1L);
+    double rejected = meterRegistry.get("fruits.concurrency.rejected").counter().count();
+
+    List<CompletableFuture<long[]>> responses = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      long start = System.nanoTime();
+      responses.add(client.sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/fruits/1")).build(),
+          HttpResponse.BodyHandlers.discarding())
+          .thenApply(response -> new long[] {response.statusCode(), System.nanoTime() - start}));
+    }
+
+    int ok = 0;
+    int unavailable = 0;
+    for (CompletableFuture<long[]> response : responses) {
+      long[] result = response.get();
+      if (result[0] == 200) {
+        ok++;
+      } else {
+        assertThat(result[0]).isEqualTo(503);
+        // answered without waiting for the slow repository
+        assertThat(Duration.ofNanos(result[1])).isLessThan(Duration.ofMillis(SLOW_MILLIS));
+        unavailable++;
+      }
+    }
+    assertThat(ok).isBetween(1, 4);
+    assertThat(ok + unavailable).isEqualTo(16);
+    assertThat(meterRegistry.get("fruits.concurrency.rejected").counter().count()).isEqualTo(rejected + unavailable);
+    assertThat(meterRegistry.get("fruits.concurrency.limit").gauge().value()).isLessThan(4);
+  }
+
+  @Test
+  public void shouldGrowLimitAgainWhileFastAndInUse() {
+    AimdConcurrencyLimit aimd = new AimdConcurrencyLimit(2, 1, 10, Duration.ofMillis(50), 0.5);
+    for (int round = 0; round < 50; round++) {
+      int admitted = 0;
+      while (aimd.tryAcquire()) {
+        admitted++;
+      }
+      for (int i = 0; i < admitted; i++) {
+        aimd.release(Duration.ofMillis(1).toNanos());
+      }
+    }
+    assertThat(aimd.getLimit()).isEqualTo(10);
+
+    aimd.tryAcquire();
+    aimd.release(Duration.ofSeconds(1).toNanos());
+    assertThat(aimd.getLimit()).isEqualTo(5);
+  }
+
+  @Test
+  public void shouldKeepLimitWhenIdle() {
+    AimdConcurrencyLimit aimd = new AimdConcurrencyLimit(4, 1, 10, Duration.ofMillis(50), 0.5);
+    for (int i = 0; i < 20; i++) {
+      aimd.tryAcquire();
+      aimd.release(Duration.ofMillis(1).toNanos());
+    }
+    assertThat(aimd.getLimit()).isEqualTo(4);
+  }
+}
@@ -0,0 +1,208 @@
+package com.amazonaws.dpri.fruits;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@SpringBootTest(properties = "fruits.response-cache.gzip.min-size=1B")
+@AutoConfigureMockMvc
+@ActiveProfiles("with-classification")
+public class FruitCacheTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private CacheManager cacheManager;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private FruitResponseCache responses;
+
+  @Autowired
+  private DataSource dataSource;
+
+  private long create(final String name) throws Exception {
+    String body = this.mockMvc.perform(post("/api/fruits").contentType(MediaType.APPLICATION_JSON)
+        .content("{\"name\": \"" + name + "\", \"classification\": \"berry\"}"))
+        .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+    return objectMapper.readTree(body).get("id").asLong();
+  }
+
+  @Test
+  public void shouldNotServeStaleFruitAfterPut() throws Exception {
+    long id = create("Gooseberry");
+    this.mockMvc.perform(get("/api/fruits/" + id)).andExpect(jsonPath("$.name").value("Gooseberry"));
+    this.mockMvc.perform(get("/api/fruits/" + id)).andExpect(jsonPath("$.name").value("Gooseberry"));
+
+    this.mockMvc.perform(put("/api/fruits/" + id).contentType(MediaType.APPLICATION_JSON)
+        .content("{\"name\": \"Cape gooseberry\", \"classification\": \"berry\"}")).andExpect(status().isOk());
+
+    this.mockMvc.perform(get("/api/fruits/" + id)).andExpect(jsonPath("$.name").value("Cape gooseberry"));
+  }
+
+  @Test
+  public void shouldNotServeStaleFruitAfterDelete() throws Exception {
+    long id = create("Elderberry");
+    this.mockMvc.perform(get("/api/fruits/" + id)).andExpect(status().isOk());
+
+    this.mockMvc.perform(delete("/api/fruits/" + id)).andExpect(status().isOk());
+
+    this.mockMvc.perform(get("/api/fruits/" + id)).andExpect(status().isNotFound());
+  }
+
+  @Test
+  public void shouldNotServeStalePageAfterWrites() throws Exception {
+    long id = create("Blackcurrant");
+    long after = id - 1;
+    this.mockMvc.perform(get("/api/fruits").param("after", String.valueOf(after)))
+        .andExpect(jsonPath("$.items[0].name").value("Blackcurrant"));
+
+    this.mockMvc.perform(put("/api/fruits/" + id).contentType(MediaType.APPLICATION_JSON)
+        .content("{\"name\": \"Redcurrant\", \"classification\": \"berry\"}")).andExpect(status().isOk());
+    this.mockMvc.perform(get("/api/fruits").param("after", String.valueOf(after)))
+        .andExpect(jsonPath("$.items[0].name").value("Redcurrant"));
+
+    this.mockMvc.perform(delete("/api/fruits/" + id)).andExpect(status().isOk());
+    String body = this.mockMvc.perform(get("/api/fruits").param("after", String.valueOf(after)))
+        .andReturn().getResponse().getContentAsString();
+    for (JsonNode item : objectMapper.readTree(body).get("items")) {
+      assertThat(item.get("id").asLong()).isNotEqualTo(id);
+    }
+  }
+
+  @Test
+  public void shouldChangeCollectionETagOnUpdate() throws Exception {
+    long id = create("Cloudberry");
+    String etag = this.mockMvc.perform(get("/api/fruits")).andReturn().getResponse().getHeader("ETag");
+    this.mockMvc.perform(get("/api/fruits").header("If-None-Match", etag)).andExpect(status().isNotModified());
+
+    this.mockMvc.perform(put("/api/fruits/" + id).contentType(MediaType.APPLICATION_JSON)
+        .content("{\"name\": \"Bakeapple\", \"classification\": \"berry\"}")).andExpect(status().isOk());
+
+    this.mockMvc.perform(get("/api/fruits").header("If-None-Match", etag)).andExpect(status().isOk())
+        .andExpect(header().string("ETag", not(etag)));
+  }
+
+  @Test
+  public void shouldChangeCollectionETagOnDelete() throws Exception {
+    long id = create("Salmonberry");
+    String etag = this.mockMvc.perform(get("/api/fruits")).andReturn().getResponse().getHeader("ETag");
+
+    this.mockMvc.perform(delete("/api/fruits/" + id)).andExpect(status().isOk());
+
+    this.mockMvc.perform(get("/api/fruits").header("If-None-Match", etag)).andExpect(status().isOk())
+        .andExpect(header().string("ETag", not(etag)));
+  }
+
+  @Test
+  public void shouldEvictOnlyOnceTheWriteHasCommitted() {
+    Cache cache = cacheManager.getCache("fruit");
+    cache.put(-1L, "old");
+
+    new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+      cache.evict(-1L);
+      // a concurrent read still sees the committed row, and so does the cache
+      assertThat(cache.get(-1L)).isNotNull();
+    });
+
+    assertThat(cache.get(-1L)).isNull();
+  }
+
+  @Test
+  public void shouldNotServeCachedPageOfOlderCatalogVersion() throws Exception {
+    create("Cloudberry");
+    this.mockMvc.perform(get("/api/fruits").param("namePrefix", "Cloud")).andExpect(jsonPath("$.items.length()").value(1));
+
+    // a write this node evicted nothing for, like one a lagging replica only shows now
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.update("insert into fruit (name, classification, version) values ('Cloudberry jam', 'berry', 0)");
+    jdbcTemplate.update("update fruit_catalog set version = version + 1 where id = 1");
+
+    this.mockMvc.perform(get("/api/fruits").param("namePrefix", "Cloud")).andExpect(jsonPath("$.items.length()").value(2));
+  }
+
+  @Test
+  public void shouldClearResponsesOnlyOnceTheWriteHasCommitted() {
+    responses.put("fruit:-1:0", "old");
+
+    new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+      responses.clear();
+      assertThat(responses.get("fruit:-1:0")).isNotNull();
+      status.setRollbackOnly();
+    });
+    assertThat(responses.get("fruit:-1:0")).isNotNull();
+
+    new TransactionTemplate(transactionManager).executeWithoutResult(status -> responses.clear());
+    assertThat(responses.get("fruit:-1:0")).isNull();
+  }
+
+  @Test
+  public void shouldRecordCacheHits() throws Exception {
+    long id = create("Lingonberry");
+    double hits = meterRegistry.get("cache.gets").tags("cache", "fruitResponses", "result", "hit").functionCounter().count();
+
+    this.mockMvc.perform(get("/api/fruits/" + id)).andExpect(status().isOk());
+    this.mockMvc.perform(get("/api/fruits/" + id)).andExpect(status().isOk());
+
+    assertThat(meterRegistry.get("cache.gets").tags("cache", "fruitResponses", "result", "hit").functionCounter().count())
+        .isEqualTo(hits + 1);
+  }
+
+  @Test
+  public void shouldServeCompressedPageToClientsAcceptingGzip() throws Exception {
+    MockHttpServletResponse plain = this.mockMvc.perform(get("/api/fruits"))
+        .andExpect(header().doesNotExist("Content-Encoding")).andReturn().getResponse();
+
+    MockHttpServletResponse compressed = this.mockMvc.perform(get("/api/fruits").header("Accept-Encoding", "gzip, deflate"))
+        .andExpect(header().string("Content-Encoding", "gzip"))
+        .andExpect(header().string("Vary", containsString("Accept-Encoding")))
+        .andExpect(header().string("ETag", "W/" + plain.getHeader("ETag")))
+        .andReturn().getResponse();
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.getContentAsByteArray()))) {
+      assertThat(in.readAllBytes()).isEqualTo(plain.getContentAsByteArray());
+    }
+
+    this.mockMvc.perform(get("/api/fruits").header("Accept-Encoding", "gzip").header("If-None-Match", compressed.getHeader("ETag")))
+        .andExpect(status().isNotModified());
+  }
+}
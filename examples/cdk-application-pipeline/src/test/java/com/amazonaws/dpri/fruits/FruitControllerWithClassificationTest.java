@@ -1,21 +1,38 @@
 package com.amazonaws.dpri.fruits;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.data.domain.Limit;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import jakarta.persistence.EntityManager;
 
 @WebMvcTest
 @ComponentScan
@@ -28,26 +45,136 @@ public class FruitControllerWithClassificationTest {
   @MockBean
   private FruitRepository repository;
 
+  @MockBean
+  private EntityManager entityManager;
+
+  @MockBean
+  private PlatformTransactionManager transactionManager;
+
+  @MockBean
+  private JdbcTemplate jdbcTemplate;
+
+  @BeforeEach
+  public void setUpVersions() {
+    when(repository.findCatalogVersion()).thenReturn(7L);
+    when(repository.findVersionById(99L)).thenReturn(Optional.of(0L));
+  }
+
   @Test
   public void shouldReturnList() throws Exception {
-    when(repository.findAll()).thenReturn(Arrays.asList(new Fruit("Mango", FruitClassification.pome), new Fruit("Dragonfruit", FruitClassification.berry)));
+    when(repository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(fruit(null, "Mango", FruitClassification.pome), fruit(null, "Dragonfruit", FruitClassification.berry)));
 
-    this.mockMvc.perform(get("/api/fruits")).andDo(print()).andExpect(status().isOk())
+    MvcResult result = this.mockMvc.perform(get("/api/fruits").param("unpaginated", "true")).andExpect(request().asyncStarted()).andReturn();
+    this.mockMvc.perform(asyncDispatch(result)).andDo(print()).andExpect(status().isOk())
         .andExpect(content().json("[{\"name\": \"Mango\", \"classification\": \"pome\"}, {\"name\": \"Dragonfruit\", \"classification\": \"berry\"}]"));
   }
 
+  @Test
+  public void shouldReturnFirstPageWithCursor() throws Exception {
+    when(repository.findByIdGreaterThanOrderByIdAsc(eq(0L), eq(Limit.of(3)))).thenReturn(Arrays.asList(
+        fruit(1L, "Mango", FruitClassification.pome), fruit(2L, "Dragonfruit", FruitClassification.berry), fruit(3L, "Kiwi", FruitClassification.berry)));
+
+    this.mockMvc.perform(get("/api/fruits").param("limit", "2")).andDo(print()).andExpect(status().isOk())
+        .andExpect(content().json("{\"items\": [{\"id\": 1, \"name\": \"Mango\", \"classification\": \"pome\"}, {\"id\": 2, \"name\": \"Dragonfruit\"}], \"next\": 2}"))
+        .andExpect(jsonPath("$.items.length()").value(2));
+  }
+
+  @Test
+  public void shouldReturnLastPageWithoutCursor() throws Exception {
+    when(repository.findByIdGreaterThanOrderByIdAsc(eq(2L), any(Limit.class))).thenReturn(Arrays.asList(fruit(3L, "Kiwi", FruitClassification.berry)));
+
+    this.mockMvc.perform(get("/api/fruits").param("after", "2")).andDo(print()).andExpect(status().isOk())
+        .andExpect(content().json("{\"items\": [{\"id\": 3, \"name\": \"Kiwi\", \"classification\": \"berry\"}]}"))
+        .andExpect(jsonPath("$.next").doesNotExist());
+  }
+
+  @Test
+  public void shouldCapPageSize() throws Exception {
+    when(repository.findByIdGreaterThanOrderByIdAsc(eq(0L), eq(Limit.of(FruitController.MAX_LIMIT + 1)))).thenReturn(Collections.emptyList());
+
+    this.mockMvc.perform(get("/api/fruits").param("limit", "1000000")).andDo(print()).andExpect(status().isOk())
+        .andExpect(content().json("{\"items\": []}"));
+  }
+
+  @Test
+  public void shouldFilterByClassificationAndNamePrefix() throws Exception {
+    when(repository.findByClassificationAndNameStartingWithAndIdGreaterThanOrderByIdAsc(
+        eq(FruitClassification.berry), eq("Dr"), eq(0L), any(Limit.class)))
+        .thenReturn(Arrays.asList(fruit(2L, "Dragonfruit", FruitClassification.berry)));
+
+    this.mockMvc.perform(get("/api/fruits").param("classification", "berry").param("namePrefix", "Dr"))
+        .andDo(print()).andExpect(status().isOk())
+        .andExpect(content().json("{\"items\": [{\"id\": 2, \"name\": \"Dragonfruit\", \"classification\": \"berry\"}]}"));
+  }
+
+  @Test
+  public void shouldFilterByNamePrefix() throws Exception {
+    when(repository.findByNameStartingWithAndIdGreaterThanOrderByIdAsc(eq("Ma"), eq(0L), any(Limit.class)))
+        .thenReturn(Arrays.asList(fruit(1L, "Mango", FruitClassification.pome)));
+
+    this.mockMvc.perform(get("/api/fruits").param("namePrefix", "Ma")).andDo(print()).andExpect(status().isOk())
+        .andExpect(jsonPath("$.items[0].name").value("Mango"));
+  }
+
+  @Test
+  public void shouldRejectUnknownClassificationFilter() throws Exception {
+    this.mockMvc.perform(get("/api/fruits").param("classification", "nut")).andDo(print())
+        .andExpect(status().isBadRequest());
+  }
+
   @Test
   public void shouldReturnOne() throws Exception {
-    when(repository.findById(99l)).thenReturn(Optional.of(new Fruit("Mango", FruitClassification.pome)));
+    when(repository.findViewById(99L)).thenReturn(Optional.of(fruit(null, "Mango", FruitClassification.pome)));
 
     this.mockMvc.perform(get("/api/fruits/99")).andDo(print()).andExpect(status().isOk())
+        .andExpect(header().string("ETag", "\"0-c\""))
         .andExpect(content().json("{\"name\": \"Mango\", \"classification\": \"pome\"}"));
   }
 
+  @Test
+  public void shouldReloadFruitCachedBeforeCheckedVersion() throws Exception {
+    when(repository.findVersionById(98L)).thenReturn(Optional.of(1L));
+    when(repository.findViewById(98L)).thenReturn(
+        Optional.of(new FruitView(98L, "Mango", FruitClassification.pome, 0L)),
+        Optional.of(new FruitView(98L, "Ripe mango", FruitClassification.pome, 1L)));
+
+    this.mockMvc.perform(get("/api/fruits/98")).andDo(print()).andExpect(status().isOk())
+        .andExpect(header().string("ETag", "\"1-c\""))
+        .andExpect(jsonPath("$.name").value("Ripe mango"));
+  }
+
+  @Test
+  public void shouldReturn304ForCurrentVersionWithoutLoadingFruit() throws Exception {
+    this.mockMvc.perform(get("/api/fruits/99").header("If-None-Match", "\"0-c\"")).andDo(print())
+        .andExpect(status().isNotModified());
+
+    verify(repository, never()).findViewById(any());
+  }
+
+  @Test
+  public void shouldReturnFruitWhenFlagStateChanged() throws Exception {
+    when(repository.findViewById(99L)).thenReturn(Optional.of(fruit(null, "Mango", FruitClassification.pome)));
+
+    this.mockMvc.perform(get("/api/fruits/99").header("If-None-Match", "\"0\"")).andDo(print())
+        .andExpect(status().isOk());
+  }
+
+  @Test
+  public void shouldReturn304ForUnchangedCollectionWithoutQueryingPage() throws Exception {
+    this.mockMvc.perform(get("/api/fruits").header("If-None-Match", "\"7-c\"")).andDo(print())
+        .andExpect(status().isNotModified());
+
+    verify(repository, never()).findByIdGreaterThanOrderByIdAsc(any(), any());
+  }
+
   @Test
   public void shouldReturn404() throws Exception {
-    when(repository.findById(99l)).thenReturn(Optional.empty());
+    when(repository.findVersionById(99L)).thenReturn(Optional.empty());
 
     this.mockMvc.perform(get("/api/fruits/99")).andDo(print()).andExpect(status().isNotFound());
   }
+
+  private static FruitView fruit(final Long id, final String name, final FruitClassification classification) {
+    return new FruitView(id, name, classification, 0L);
+  }
 }
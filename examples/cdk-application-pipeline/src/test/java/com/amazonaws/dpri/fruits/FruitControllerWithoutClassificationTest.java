@@ -1,21 +1,36 @@
 package com.amazonaws.dpri.fruits;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import jakarta.persistence.EntityManager;
 
 @WebMvcTest
 @ComponentScan
@@ -28,26 +43,59 @@ public class FruitControllerWithoutClassificationTest {
   @MockBean
   private FruitRepository repository;
 
+  @MockBean
+  private EntityManager entityManager;
+
+  @MockBean
+  private PlatformTransactionManager transactionManager;
+
+  @MockBean
+  private JdbcTemplate jdbcTemplate;
+
+  @BeforeEach
+  public void setUpVersions() {
+    when(repository.findCatalogVersion()).thenReturn(7L);
+    when(repository.findVersionById(99L)).thenReturn(Optional.of(0L));
+  }
+
   @Test
   public void shouldReturnList() throws Exception {
-    when(repository.findAll()).thenReturn(Arrays.asList(new Fruit("Mango", FruitClassification.pome), new Fruit("Dragonfruit", FruitClassification.berry)));
+    when(repository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(fruit(null, "Mango", FruitClassification.pome), fruit(null, "Dragonfruit", FruitClassification.berry)));
 
-    this.mockMvc.perform(get("/api/fruits")).andDo(print()).andExpect(status().isOk())
+    MvcResult result = this.mockMvc.perform(get("/api/fruits").param("unpaginated", "true")).andExpect(request().asyncStarted()).andReturn();
+    this.mockMvc.perform(asyncDispatch(result)).andDo(print()).andExpect(status().isOk())
         .andExpect(content().json("[{\"name\": \"Mango\"}, {\"name\": \"Dragonfruit\"}]"));
   }
 
   @Test
   public void shouldReturnOne() throws Exception {
-    when(repository.findById(99l)).thenReturn(Optional.of(new Fruit("Mango", FruitClassification.pome)));
+    when(repository.findViewById(99L)).thenReturn(Optional.of(fruit(null, "Mango", FruitClassification.pome)));
 
     this.mockMvc.perform(get("/api/fruits/99")).andDo(print()).andExpect(status().isOk())
+        .andExpect(header().string("ETag", "\"0\""))
         .andExpect(content().json("{\"name\": \"Mango\"}"));
   }
 
+  @Test
+  public void shouldIgnoreClassificationFilter() throws Exception {
+    when(repository.findByNameStartingWithAndIdGreaterThanOrderByIdAsc(eq("Ma"), eq(0L), any(Limit.class)))
+        .thenReturn(Arrays.asList(fruit(null, "Mango", FruitClassification.pome)));
+
+    this.mockMvc.perform(get("/api/fruits").param("classification", "pome").param("namePrefix", "Ma"))
+        .andDo(print()).andExpect(status().isOk())
+        .andExpect(content().json("{\"items\": [{\"name\": \"Mango\"}]}"));
+
+    verify(repository, never()).findByClassificationAndNameStartingWithAndIdGreaterThanOrderByIdAsc(any(), any(), any(), any());
+  }
+
   @Test
   public void shouldReturn404() throws Exception {
-    when(repository.findById(99l)).thenReturn(Optional.empty());
+    when(repository.findVersionById(99L)).thenReturn(Optional.empty());
 
     this.mockMvc.perform(get("/api/fruits/99")).andDo(print()).andExpect(status().isNotFound());
   }
+
+  private static FruitView fruit(final Long id, final String name, final FruitClassification classification) {
+    return new FruitView(id, name, classification, 0L);
+  }
 }
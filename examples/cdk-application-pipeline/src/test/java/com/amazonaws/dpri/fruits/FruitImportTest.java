@@ -0,0 +1,95 @@
+package com.amazonaws.dpri.fruits;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("with-classification")
+public class FruitImportTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private FruitRepository repository;
+
+  private List<JsonNode> importFruits(final String body, final int chunkSize) throws Exception {
+    String results = this.mockMvc.perform(post("/api/fruits/import").param("chunkSize", String.valueOf(chunkSize))
+        .contentType("application/x-ndjson").content(body))
+        .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+    return results.lines().map(line -> {
+      try {
+        return objectMapper.readTree(line);
+      } catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    }).collect(Collectors.toList());
+  }
+
+  @Test
+  public void shouldImportInChunks() throws Exception {
+    long before = repository.count();
+    String body = IntStream.range(0, 25)
+        .mapToObj(i -> "{\"name\": \"Import " + i + "\", \"classification\": \"drupe\"}")
+        .collect(Collectors.joining("\n"));
+
+    List<JsonNode> results = importFruits(body, 10);
+
+    assertThat(results).hasSize(3);
+    assertThat(results.get(0).get("inserted").asInt()).isEqualTo(10);
+    assertThat(results.get(2).get("offset").asLong()).isEqualTo(20);
+    assertThat(results.get(2).get("inserted").asInt()).isEqualTo(5);
+    assertThat(repository.count()).isEqualTo(before + 25);
+  }
+
+  @Test
+  public void shouldStopAtInvalidInput() throws Exception {
+    long before = repository.count();
+    String body = "{\"name\": \"Quince\"}\n{\"name\": \"Medlar\"}\n{\"name\": \"Sloe\", \"classification\": \"nut\"}\n{\"name\": \"Rowan\"}";
+
+    List<JsonNode> results = importFruits(body, 2);
+
+    assertThat(results).hasSize(2);
+    assertThat(results.get(0).get("inserted").asInt()).isEqualTo(2);
+    assertThat(results.get(1).get("offset").asLong()).isEqualTo(2);
+    assertThat(results.get(1).get("error").asText()).startsWith("Invalid input");
+    assertThat(repository.count()).isEqualTo(before + 2);
+  }
+
+  @Test
+  public void shouldNotServeStaleReadsAfterImport() throws Exception {
+    long before = repository.count();
+    long last = repository.findAll().stream().mapToLong(Fruit::getId).max().orElse(0);
+    this.mockMvc.perform(get("/api/fruits/" + (last + 1))).andExpect(status().isNotFound());
+    this.mockMvc.perform(get("/api/fruits").param("after", String.valueOf(last)))
+        .andExpect(jsonPath("$.items").isEmpty());
+
+    importFruits("{\"name\": \"Salak\", \"classification\": \"drupe\"}", 10);
+
+    assertThat(repository.count()).isEqualTo(before + 1);
+    this.mockMvc.perform(get("/api/fruits/" + (last + 1))).andExpect(jsonPath("$.name").value("Salak"));
+    this.mockMvc.perform(get("/api/fruits").param("after", String.valueOf(last)))
+        .andExpect(jsonPath("$.items[0].name").value("Salak"));
+  }
+}
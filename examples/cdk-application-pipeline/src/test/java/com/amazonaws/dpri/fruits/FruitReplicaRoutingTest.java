@@ -0,0 +1,155 @@
+package com.amazonaws.dpri.fruits;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.sql.Connection;
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Routes between two in-memory H2 databases. Nothing replicates between
+ * them here, so the replica holds its own rows and reads show where they
+ * were served from. The replica reports the lag stored in replica_lag.
+ */
+@SpringBootTest(properties = {
+    "spring.cache.type=none",
+    "fruits.datasource.replica.url=jdbc:h2:mem:fruits-replica;DB_CLOSE_DELAY=-1",
+    "fruits.datasource.replica.lag-query=select seconds from replica_lag",
+    "fruits.datasource.replica.lag-column=seconds",
+    // measured by the tests only
+    "fruits.datasource.replica.lag-check-interval=1h"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("with-classification")
+public class FruitReplicaRoutingTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ReplicaDataSource replicaDataSource;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  @Qualifier("primaryDataSource")
+  private DataSource primary;
+
+  @Autowired
+  @Qualifier("replicaPoolDataSource")
+  private DataSource replica;
+
+  @BeforeEach
+  public void setUpReplica() {
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(replica);
+    jdbcTemplate.execute("create table if not exists fruit (id bigint primary key, name varchar(255),"
+        + " classification varchar(255), version bigint not null)");
+    jdbcTemplate.execute("create table if not exists replica_lag (seconds int)");
+    jdbcTemplate.execute("create table if not exists fruit_catalog (id int primary key, version bigint not null)");
+    jdbcTemplate.update("merge into fruit_catalog values (1, 0)");
+    jdbcTemplate.update("delete from fruit");
+    jdbcTemplate.update("delete from replica_lag");
+    jdbcTemplate.update("insert into fruit values (1, 'Replica apple', 'pome', 0)");
+    setLag(0);
+  }
+
+  private void setLag(final int seconds) {
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(replica);
+    jdbcTemplate.update("delete from replica_lag");
+    jdbcTemplate.update("insert into replica_lag values (?)", seconds);
+    replicaDataSource.checkLag();
+  }
+
+  private double reads(final String pool, final String fallback) {
+    return meterRegistry.get("fruits.datasource.reads").tags("pool", pool, "fallback", fallback).counter().count();
+  }
+
+  @Test
+  public void shouldReadFromReplica() throws Exception {
+    double replicaReads = reads("replica", "none");
+
+    this.mockMvc.perform(get("/api/fruits/1")).andExpect(status().isOk())
+        .andExpect(jsonPath("$.name").value("Replica apple"));
+    this.mockMvc.perform(get("/api/fruits").param("limit", "1"))
+        .andExpect(jsonPath("$.items[0].name").value("Replica apple"));
+
+    assertThat(reads("replica", "none")).isEqualTo(replicaReads + 2);
+  }
+
+  @Test
+  public void shouldReadFromPrimaryWhenReplicaLags() throws Exception {
+    setLag(10);
+    double laggingReads = reads("primary", "lag");
+
+    this.mockMvc.perform(get("/api/fruits/1")).andExpect(status().isOk())
+        .andExpect(jsonPath("$.name").value("Apple"));
+
+    assertThat(reads("primary", "lag")).isEqualTo(laggingReads + 1);
+    assertThat(meterRegistry.get("fruits.datasource.replica.lag").gauge().value()).isEqualTo(10);
+  }
+
+  @Test
+  public void shouldReadFromPrimaryWhenLagIsUnknown() throws Exception {
+    new JdbcTemplate(replica).update("delete from replica_lag");
+    replicaDataSource.checkLag();
+
+    this.mockMvc.perform(get("/api/fruits/1")).andExpect(status().isOk())
+        .andExpect(jsonPath("$.name").value("Apple"));
+  }
+
+  @Test
+  public void shouldWriteToPrimary() throws Exception {
+    this.mockMvc.perform(post("/api/fruits").contentType(MediaType.APPLICATION_JSON)
+        .content("{\"name\": \"Primary plum\", \"classification\": \"drupe\"}")).andExpect(status().isOk());
+
+    assertThat(new JdbcTemplate(primary).queryForObject("select count(*) from fruit where name = 'Primary plum'", Integer.class))
+        .isEqualTo(1);
+    assertThat(new JdbcTemplate(replica).queryForObject("select count(*) from fruit where name = 'Primary plum'", Integer.class))
+        .isZero();
+  }
+
+  @Test
+  public void shouldRecordMetricsPerPool() {
+    assertThat(meterRegistry.get("hikaricp.connections").tag("pool", "primary").gauge()).isNotNull();
+    assertThat(meterRegistry.get("hikaricp.connections").tag("pool", "replica").gauge()).isNotNull();
+  }
+
+  @Test
+  public void shouldRouteConnectionsWithCredentials() throws Exception {
+    // the Hikari pools reject credentials, plain H2 connections accept them
+    ReplicaDataSource routing = new ReplicaDataSource(
+        new DriverManagerDataSource("jdbc:h2:mem:fruits-replica;DB_CLOSE_DELAY=-1", "sa", ""),
+        new DriverManagerDataSource("jdbc:h2:mem:fruits-credentials", "sa", ""),
+        "select seconds from replica_lag", "seconds", Duration.ofSeconds(2), Duration.ofHours(1));
+    routing.checkLag();
+    try (Connection connection = routing.getConnection("sa", "")) {
+      assertThat(connection.getMetaData().getURL()).startsWith("jdbc:h2:mem:fruits-replica");
+    }
+
+    new JdbcTemplate(replica).update("update replica_lag set seconds = 10");
+    routing.checkLag();
+    try (Connection connection = routing.getConnection("sa", "")) {
+      assertThat(connection.getMetaData().getURL()).startsWith("jdbc:h2:mem:fruits-credentials");
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package com.amazonaws.dpri.fruits;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import org.springframework.core.io.support.SpringFactoriesLoader;
+import org.springframework.util.ClassUtils;
+
+import com.amazonaws.appconfigagent.AppConfigAgentEndpoint;
+
+public class FruitRuntimeHintsTest {
+
+  @Test
+  public void shouldRegisterHintsForNativeImage() {
+    RuntimeHints hints = new RuntimeHints();
+    new FruitRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+    assertThat(RuntimeHintsPredicates.reflection().onType(FruitImportResult.class)).accepts(hints);
+    assertThat(RuntimeHintsPredicates.reflection().onType(FruitView.class)
+        .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)).accepts(hints);
+    assertThat(RuntimeHintsPredicates.resource().forResource("db/changelog/db.changelog-master.yaml")).accepts(hints);
+    assertThat(RuntimeHintsPredicates.resource().forResource("META-INF/maven/org.webjars/swagger-ui/pom.properties"))
+        .accepts(hints);
+    // the Liquibase changes are named, so check they still exist
+    hints.reflection().typeHints()
+        .map(hint -> hint.getType().getName())
+        .filter(name -> name.startsWith("liquibase."))
+        .forEach(name -> assertThat(ClassUtils.isPresent(name, getClass().getClassLoader())).as(name).isTrue());
+  }
+
+  @Test
+  public void shouldRegisterAppConfigAgentHintsThroughAotFactories() {
+    RuntimeHints hints = new RuntimeHints();
+    SpringFactoriesLoader.forResourceLocation("META-INF/spring/aot.factories")
+        .load(RuntimeHintsRegistrar.class)
+        .forEach(registrar -> registrar.registerHints(hints, getClass().getClassLoader()));
+
+    assertThat(RuntimeHintsPredicates.reflection().onMethod(AppConfigAgentEndpoint.class, "configurations")).accepts(hints);
+  }
+}
@@ -0,0 +1,93 @@
+package com.amazonaws.dpri.fruits;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+/**
+ * Migrates in-memory H2 databases with the migrate profile, the way
+ * --migrate-only does, and checks them like a serving instance.
+ */
+public class FruitSchemaCheckTest {
+
+  private static final ClassPathResource CHANGE_LOG = new ClassPathResource("db/changelog/db.changelog-master.yaml");
+
+  @Test
+  public void shouldPassAfterMigrateOnlyRun() throws Exception {
+    String url = "jdbc:h2:mem:fruits-migrated;DB_CLOSE_DELAY=-1";
+    try (ConfigurableApplicationContext context = new SpringApplicationBuilder(FruitApplication.class)
+        .profiles("migrate")
+        .properties("spring.datasource.url=" + url)
+        .run()) {
+      assertThat(context).isNotInstanceOf(WebServerApplicationContext.class);
+    }
+
+    FruitSchemaCheck check = new FruitSchemaCheck(dataSource(url), CHANGE_LOG, "DATABASECHANGELOG");
+    check.afterPropertiesSet();
+    assertThat(check.changeSets()).startsWith("1::AWS");
+  }
+
+  @Test
+  public void shouldFailOnMissingChangeSet() throws Exception {
+    JdbcTemplate jdbcTemplate = jdbcTemplate("jdbc:h2:mem:fruits-behind;DB_CLOSE_DELAY=-1");
+    jdbcTemplate.execute("create table DATABASECHANGELOG (id varchar(255), author varchar(255))");
+    jdbcTemplate.update("insert into DATABASECHANGELOG values ('1', 'AWS'), ('2', 'AWS'), ('3', 'AWS'), ('4', 'AWS')");
+
+    assertThatIllegalStateException()
+        .isThrownBy(new FruitSchemaCheck(jdbcTemplate.getDataSource(), CHANGE_LOG, "DATABASECHANGELOG")::afterPropertiesSet)
+        .withMessageContaining("[5::AWS]");
+  }
+
+  @Test
+  public void shouldFailOnUnmigratedDatabase() {
+    JdbcTemplate jdbcTemplate = jdbcTemplate("jdbc:h2:mem:fruits-empty;DB_CLOSE_DELAY=-1");
+
+    assertThatIllegalStateException()
+        .isThrownBy(new FruitSchemaCheck(jdbcTemplate.getDataSource(), CHANGE_LOG, "DATABASECHANGELOG")::afterPropertiesSet)
+        .withMessageContaining("--migrate-only");
+  }
+
+  @Test
+  public void shouldCheckReactiveVariantInItsChangeLogTable() {
+    String url = "jdbc:h2:mem:fruits-reactive;DB_CLOSE_DELAY=-1";
+    new SpringApplicationBuilder(FruitApplication.class)
+        .profiles("migrate")
+        .properties("spring.datasource.url=" + url, "spring.liquibase.database-change-log-table=FRUIT_CHANGELOG")
+        .run()
+        .close();
+
+    try (ConfigurableApplicationContext context = reactive(url, "FRUIT_CHANGELOG").run()) {
+      assertThat(context).isInstanceOf(ReactiveWebServerApplicationContext.class);
+      assertThat(context.getBean(FruitSchemaCheck.class)).isNotNull();
+    }
+    assertThatThrownBy(() -> reactive(url, "DATABASECHANGELOG").run())
+        .hasStackTraceContaining("--migrate-only");
+  }
+
+  private static SpringApplicationBuilder reactive(final String url, final String changeLogTable) {
+    return new SpringApplicationBuilder(FruitApplication.class)
+        .profiles("reactive")
+        // application-reactive.yml hands the datasource url to Liquibase, there is no DataSource
+        .properties("server.port=0", "spring.liquibase.enabled=false", "spring.datasource.url=" + url,
+            "spring.liquibase.database-change-log-table=" + changeLogTable);
+  }
+
+  private static DataSource dataSource(final String url) {
+    return new DriverManagerDataSource(url, "sa", "");
+  }
+
+  private static JdbcTemplate jdbcTemplate(final String url) {
+    return new JdbcTemplate(dataSource(url));
+  }
+}
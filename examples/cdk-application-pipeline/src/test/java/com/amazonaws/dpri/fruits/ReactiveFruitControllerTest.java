@@ -0,0 +1,158 @@
+package com.amazonaws.dpri.fruits;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import reactor.core.scheduler.Schedulers;
+
+// on a port, so requests are handled on Netty event loops
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "spring.main.web-application-type=reactive")
+@AutoConfigureWebTestClient
+@ActiveProfiles({"reactive", "with-classification"})
+public class ReactiveFruitControllerTest {
+
+  @Autowired
+  private WebTestClient webTestClient;
+
+  @SpyBean
+  private FruitMapper mapper;
+
+  private FruitDTO create(final String name) {
+    return webTestClient.post().uri("/api/fruits").contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"name\": \"" + name + "\", \"classification\": \"berry\"}")
+        .exchange().expectStatus().isOk()
+        .expectBody(FruitDTO.class).returnResult().getResponseBody();
+  }
+
+  private List<JsonNode> importFruits(final String body, final int chunkSize) {
+    return webTestClient.post().uri(uri -> uri.path("/api/fruits/import").queryParam("chunkSize", chunkSize).build())
+        .contentType(MediaType.APPLICATION_NDJSON).bodyValue(body)
+        .exchange().expectStatus().isOk()
+        .expectBodyList(JsonNode.class).returnResult().getResponseBody();
+  }
+
+  @Test
+  public void shouldResolveFlagsOffTheEventLoop() {
+    // a flag missing from the AppConfig snapshot is fetched from the agent with a blocking call
+    List<Boolean> onEventLoop = new CopyOnWriteArrayList<>();
+    doAnswer(invocation -> {
+      onEventLoop.add(Schedulers.isInNonBlockingThread());
+      return invocation.callRealMethod();
+    }).when(mapper).isClassificationEnabled();
+
+    webTestClient.get().uri("/api/fruits").exchange().expectStatus().isOk();
+    webTestClient.get().uri("/api/fruits/1").exchange().expectStatus().isOk();
+    webTestClient.get().uri("/api/fruits?unpaginated=true").exchange().expectStatus().isOk();
+    create("Salak");
+
+    assertThat(onEventLoop).hasSize(4).containsOnly(false);
+  }
+
+  @Test
+  public void shouldReturnFirstPageWithCursor() {
+    webTestClient.get().uri("/api/fruits?limit=2").exchange()
+        .expectStatus().isOk()
+        .expectHeader().exists("ETag")
+        .expectBody()
+        .jsonPath("$.items.length()").isEqualTo(2)
+        .jsonPath("$.items[0].name").isEqualTo("Apple")
+        .jsonPath("$.items[0].classification").isEqualTo("pome")
+        .jsonPath("$.next").isEqualTo(2);
+  }
+
+  @Test
+  public void shouldReturn304ForCurrentPage() {
+    String etag = webTestClient.get().uri("/api/fruits").exchange()
+        .expectStatus().isOk().returnResult(String.class).getResponseHeaders().getETag();
+
+    webTestClient.get().uri("/api/fruits").header("If-None-Match", etag).exchange()
+        .expectStatus().isNotModified();
+  }
+
+  @Test
+  public void shouldReturnUnpaginatedList() {
+    webTestClient.get().uri("/api/fruits?unpaginated=true").exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentType(MediaType.APPLICATION_JSON)
+        .expectBody()
+        .jsonPath("$[0].name").isEqualTo("Apple")
+        .jsonPath("$[4].name").isEqualTo("Grape");
+  }
+
+  @Test
+  public void shouldReturnOneWithETag() {
+    webTestClient.get().uri("/api/fruits/1").exchange()
+        .expectStatus().isOk()
+        .expectHeader().valueEquals("ETag", "\"0-c\"")
+        .expectBody().jsonPath("$.name").isEqualTo("Apple");
+
+    webTestClient.get().uri("/api/fruits/1").header("If-None-Match", "\"0-c\"").exchange()
+        .expectStatus().isNotModified();
+  }
+
+  @Test
+  public void shouldReturnNotFound() {
+    webTestClient.get().uri("/api/fruits/999999").exchange()
+        .expectStatus().isNotFound()
+        .expectBody(String.class).isEqualTo("Unable to find fruit 999999");
+  }
+
+  @Test
+  public void shouldCreateReplaceAndDelete() {
+    FruitDTO created = create("Mulberry");
+    assertThat(created.getId()).isNotNull();
+
+    webTestClient.put().uri("/api/fruits/" + created.getId()).contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"name\": \"White mulberry\", \"classification\": \"berry\"}")
+        .exchange().expectStatus().isOk()
+        .expectBody().jsonPath("$.name").isEqualTo("White mulberry");
+    webTestClient.get().uri("/api/fruits/" + created.getId()).exchange()
+        .expectHeader().valueEquals("ETag", "\"1-c\"");
+
+    webTestClient.delete().uri("/api/fruits/" + created.getId()).exchange().expectStatus().isOk();
+    webTestClient.get().uri("/api/fruits/" + created.getId()).exchange().expectStatus().isNotFound();
+  }
+
+  @Test
+  public void shouldImportInChunks() {
+    String body = IntStream.range(0, 25)
+        .mapToObj(i -> "{\"name\": \"Reactive import " + i + "\", \"classification\": \"drupe\"}")
+        .collect(Collectors.joining("\n"));
+
+    List<JsonNode> results = importFruits(body, 10);
+
+    assertThat(results).hasSize(3);
+    assertThat(results.get(0).get("inserted").asInt()).isEqualTo(10);
+    assertThat(results.get(2).get("offset").asLong()).isEqualTo(20);
+    assertThat(results.get(2).get("inserted").asInt()).isEqualTo(5);
+  }
+
+  @Test
+  public void shouldStopImportAtInvalidInput() {
+    String body = "{\"name\": \"Quince\"}\n{\"name\": \"Medlar\"}\n{\"name\": \"Sloe\", \"classification\": \"nut\"}\n{\"name\": \"Rowan\"}";
+
+    List<JsonNode> results = importFruits(body, 2);
+
+    assertThat(results).hasSize(2);
+    assertThat(results.get(0).get("inserted").asInt()).isEqualTo(2);
+    assertThat(results.get(1).get("offset").asLong()).isEqualTo(2);
+    assertThat(results.get(1).get("error").asText()).startsWith("Invalid input");
+  }
+}
@@ -0,0 +1,214 @@
+package com.amazonaws.dpri.jmeter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Fails when a JMeter run is slower than a baseline run of the same plan.
+ * For every sampler of the baseline, the p50, p95 and p99 latencies may grow
+ * by at most 'max-latency-increase' percent, ignoring increases of up to
+ * 'latency-slack' milliseconds, and the throughput may drop by at most
+ * 'max-throughput-decrease' percent. A sampler missing from the run is a
+ * regression, a new one is only reported.
+ *
+ * The comparison is written as a Markdown table to the report file. Without
+ * a baseline file, or with 'update=true' once the comparison passes, the run
+ * is recorded as the new baseline.
+ *
+ * Run after jmeter:results with 'exec:java@jmeter-baseline', or directly with
+ * the result directory or file, the baseline file, the report file and
+ * options like '--max-latency-increase=20' as arguments.
+ */
+public final class JtlBaselineCheck {
+
+  /**
+   * Latency percentiles compared with the baseline.
+   */
+  private static final int[] PERCENTILES = {50, 95, 99};
+
+  /**
+   * Largest latency increase, in percent of the baseline.
+   */
+  private final double maxLatencyIncrease;
+
+  /**
+   * Latency increase in milliseconds that is never a regression, as a few
+   * milliseconds are a large share of a fast request.
+   */
+  private final long latencySlack;
+
+  /**
+   * Largest throughput decrease, in percent of the baseline.
+   */
+  private final double maxThroughputDecrease;
+
+  JtlBaselineCheck(final double maxLatencyIncrease, final long latencySlack, final double maxThroughputDecrease) {
+    this.maxLatencyIncrease = maxLatencyIncrease;
+    this.latencySlack = latencySlack;
+    this.maxThroughputDecrease = maxThroughputDecrease;
+  }
+
+  /**
+   * Compare a JMeter run with its baseline.
+   * @param args result directory or file, baseline file, report file, then options
+   * @throws IOException when a file cannot be read or written
+   */
+  public static void main(final String[] args) throws IOException {
+    if (args.length < 3) {
+      throw new IllegalArgumentException("Usage: JtlBaselineCheck <results> <baseline.properties> <report.md>"
+          + " [--max-latency-increase=20] [--latency-slack=10] [--max-throughput-decrease=10] [--update=false]");
+    }
+    Map<String, String> options = new TreeMap<>();
+    for (int i = 3; i < args.length; i++) {
+      String[] option = args[i].split("=", 2);
+      if (!option[0].startsWith("--") || option.length != 2) {
+        throw new IllegalArgumentException("Option " + args[i] + " is not --name=value");
+      }
+      options.put(option[0].substring(2), option[1].trim());
+    }
+    JtlBaselineCheck check = new JtlBaselineCheck(
+        Double.parseDouble(options.getOrDefault("max-latency-increase", "20")),
+        Long.parseLong(options.getOrDefault("latency-slack", "10")),
+        Double.parseDouble(options.getOrDefault("max-throughput-decrease", "10")));
+    boolean update = Boolean.parseBoolean(options.getOrDefault("update", "false"));
+
+    SortedMap<String, SamplerStats> stats = JtlSummary.read(Path.of(args[0]));
+    Path baselineFile = Path.of(args[1]);
+    if (!Files.exists(baselineFile)) {
+      System.out.println("No baseline at " + baselineFile + ", recording this run as the baseline");
+      write(baselineFile, toBaseline(stats));
+      return;
+    }
+    Properties baseline = new Properties();
+    try (Reader reader = Files.newBufferedReader(baselineFile, StandardCharsets.UTF_8)) {
+      baseline.load(reader);
+    }
+
+    List<String> regressions = new ArrayList<>();
+    String report = check.compare(baseline, stats, regressions);
+    Path reportFile = Path.of(args[2]);
+    if (reportFile.getParent() != null) {
+      Files.createDirectories(reportFile.getParent());
+    }
+    Files.writeString(reportFile, report, StandardCharsets.UTF_8);
+    System.out.print(report);
+    if (!regressions.isEmpty()) {
+      throw new IllegalStateException("Performance regressed against " + baselineFile + ":\n  "
+          + String.join("\n  ", regressions));
+    }
+    if (update) {
+      System.out.println("Recording this run as the new baseline at " + baselineFile);
+      write(baselineFile, toBaseline(stats));
+    }
+  }
+
+  /**
+   * Baseline of a run: the compared percentiles in milliseconds and the
+   * throughput in samples per second, by 'label.pNN' and 'label.throughput'.
+   * @param stats statistics by sampler label
+   * @return baseline properties
+   */
+  static Properties toBaseline(final Map<String, SamplerStats> stats) {
+    Properties baseline = new Properties();
+    stats.forEach((label, sampler) -> {
+      for (int percent : PERCENTILES) {
+        baseline.setProperty(label + ".p" + percent, String.valueOf(sampler.percentile(percent)));
+      }
+      baseline.setProperty(label + ".throughput", String.format(Locale.ROOT, "%.2f", sampler.getThroughput()));
+    });
+    return baseline;
+  }
+
+  private static void write(final Path file, final Properties baseline) throws IOException {
+    if (file.getParent() != null) {
+      Files.createDirectories(file.getParent());
+    }
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      baseline.store(writer, "JMeter baseline, latencies in milliseconds and throughput in samples per second");
+    }
+  }
+
+  /**
+   * Compare a run with a baseline.
+   * @param baseline baseline properties
+   * @param stats statistics of the run by sampler label
+   * @param regressions receives one line per regression
+   * @return Markdown report of every compared value
+   */
+  String compare(final Properties baseline, final Map<String, SamplerStats> stats, final List<String> regressions) {
+    TreeSet<String> baselineLabels = new TreeSet<>();
+    for (String key : baseline.stringPropertyNames()) {
+      baselineLabels.add(key.substring(0, key.lastIndexOf('.')));
+    }
+    TreeSet<String> labels = new TreeSet<>(stats.keySet());
+    labels.addAll(baselineLabels);
+    StringBuilder report = new StringBuilder()
+        .append("| Sampler | Metric | Baseline | Current | Change | Result |\n")
+        .append("|---|---|---:|---:|---:|---|\n");
+    for (String label : labels) {
+      SamplerStats sampler = stats.get(label);
+      // a sampler is only new when the baseline has no value at all for it
+      boolean known = baselineLabels.contains(label);
+      if (sampler == null || sampler.getCount() == 0) {
+        row(report, label, "samples", "", "0", "", known ? "REGRESSED" : "new");
+        if (known) {
+          regressions.add(label + " has no samples");
+        }
+        continue;
+      }
+      if (!known) {
+        row(report, label, "samples", "", String.valueOf(sampler.getCount()), "", "new");
+        continue;
+      }
+      for (int percent : PERCENTILES) {
+        String metric = "p" + percent;
+        String expected = baseline.getProperty(label + "." + metric);
+        if (expected == null) {
+          continue;
+        }
+        long before = Long.parseLong(expected.trim());
+        long after = sampler.percentile(percent);
+        boolean regressed = after - before > latencySlack && after > before * (1 + maxLatencyIncrease / 100);
+        row(report, label, metric, before + " ms", after + " ms", change(before, after), regressed ? "REGRESSED" : "ok");
+        if (regressed) {
+          regressions.add(String.format(Locale.ROOT, "%s %s %d ms, baseline %d ms (%s)",
+              label, metric, after, before, change(before, after)));
+        }
+      }
+      String expected = baseline.getProperty(label + ".throughput");
+      if (expected == null) {
+        continue;
+      }
+      double before = Double.parseDouble(expected.trim());
+      double after = sampler.getThroughput();
+      boolean regressed = after < before * (1 - maxThroughputDecrease / 100);
+      row(report, label, "throughput", String.format(Locale.ROOT, "%.2f/s", before),
+          String.format(Locale.ROOT, "%.2f/s", after), change(before, after), regressed ? "REGRESSED" : "ok");
+      if (regressed) {
+        regressions.add(String.format(Locale.ROOT, "%s throughput %.2f/s, baseline %.2f/s (%s)",
+            label, after, before, change(before, after)));
+      }
+    }
+    return report.toString();
+  }
+
+  private static String change(final double before, final double after) {
+    return before == 0 ? "" : String.format(Locale.ROOT, "%+.1f%%", (after - before) * 100 / before);
+  }
+
+  private static void row(final StringBuilder report, final String... cells) {
+    report.append("| ").append(String.join(" | ", cells)).append(" |\n");
+  }
+}
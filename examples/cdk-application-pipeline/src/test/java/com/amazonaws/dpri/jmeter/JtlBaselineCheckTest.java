@@ -0,0 +1,75 @@
+package com.amazonaws.dpri.jmeter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+
+public class JtlBaselineCheckTest {
+
+  private final JtlBaselineCheck check = new JtlBaselineCheck(20, 10, 10);
+
+  /**
+   * 100 samples of 1 to 100 ms times a factor.
+   */
+  private static SamplerStats sampler(final String label, final long factor, final long spanMillis) {
+    return new SamplerStats(label, 0, LongStream.rangeClosed(1, 100).map(i -> i * factor).toArray(), spanMillis);
+  }
+
+  @Test
+  public void shouldPassRunEqualToItsBaseline() {
+    Map<String, SamplerStats> stats = Map.of("get", sampler("get", 1, 10000), "list", sampler("list", 3, 10000));
+    List<String> regressions = new ArrayList<>();
+
+    String report = check.compare(JtlBaselineCheck.toBaseline(stats), stats, regressions);
+
+    assertThat(regressions).isEmpty();
+    assertThat(report).contains("| get | p99 | 99 ms | 99 ms | +0.0% | ok |")
+        .contains("| list | throughput | 10.00/s | 10.00/s | +0.0% | ok |");
+  }
+
+  @Test
+  public void shouldReportSlowerAndMissingSamplers() {
+    Properties baseline = JtlBaselineCheck.toBaseline(Map.of(
+        "get", sampler("get", 10, 10000),
+        "list", sampler("list", 1, 10000),
+        "delete", sampler("delete", 1, 10000)));
+    Map<String, SamplerStats> stats = Map.of(
+        // twice as slow
+        "get", sampler("get", 20, 10000),
+        // slower by at most 10 ms, and a third fewer samples per second
+        "list", new SamplerStats("list", 0, LongStream.rangeClosed(1, 100).map(i -> i + 10).toArray(), 15000),
+        "create", sampler("create", 1, 10000));
+    List<String> regressions = new ArrayList<>();
+
+    String report = check.compare(baseline, stats, regressions);
+
+    assertThat(regressions).containsExactly(
+        "delete has no samples",
+        "get p50 1000 ms, baseline 500 ms (+100.0%)",
+        "get p95 1900 ms, baseline 950 ms (+100.0%)",
+        "get p99 1980 ms, baseline 990 ms (+100.0%)",
+        "list throughput 6.67/s, baseline 10.00/s (-33.3%)");
+    assertThat(report).contains("| create | samples |  | 100 |  | new |")
+        .contains("| list | p50 | 50 ms | 60 ms | +20.0% | ok |");
+  }
+
+  @Test
+  public void shouldCompareSamplersWithPartialBaseline() {
+    Properties baseline = new Properties();
+    // written by hand, latencies only
+    baseline.setProperty("get.p99", "990");
+    baseline.setProperty("delete.p99", "990");
+    List<String> regressions = new ArrayList<>();
+
+    String report = check.compare(baseline, Map.of("get", sampler("get", 20, 10000)), regressions);
+
+    assertThat(regressions).containsExactly("delete has no samples", "get p99 1980 ms, baseline 990 ms (+100.0%)");
+    assertThat(report).doesNotContain("new").doesNotContain("throughput");
+  }
+}
@@ -0,0 +1,83 @@
+package com.amazonaws.dpri.jmeter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Fails when a sampler of a JMeter run is slower than its latency objectives.
+ * Objectives are properties named after the sampler label and a percentile,
+ * in milliseconds, like 'get.p99=500'. A sampler with objectives that has no
+ * samples fails too, as the plan no longer exercises it.
+ *
+ * Run after jmeter:results with 'exec:java@jmeter-slo', or directly with the
+ * result directory or file and the objectives file as arguments.
+ */
+public final class JtlSloCheck {
+
+  private JtlSloCheck() {
+  }
+
+  /**
+   * Check a JMeter run against its objectives.
+   * @param args result directory or file, objectives file
+   * @throws IOException when a file cannot be read
+   */
+  public static void main(final String[] args) throws IOException {
+    if (args.length != 2) {
+      throw new IllegalArgumentException("Usage: JtlSloCheck <results> <objectives.properties>");
+    }
+    Properties objectives = new Properties();
+    try (Reader reader = Files.newBufferedReader(Path.of(args[1]), StandardCharsets.UTF_8)) {
+      objectives.load(reader);
+    }
+    List<String> breaches = check(JtlSummary.read(Path.of(args[0])), objectives);
+    if (!breaches.isEmpty()) {
+      throw new IllegalStateException("Latency objectives missed:\n  " + String.join("\n  ", breaches));
+    }
+  }
+
+  /**
+   * Compare sampler statistics with objectives, printing one line per objective.
+   * @param stats statistics by sampler label
+   * @param objectives percentile limits in milliseconds by 'label.pNN'
+   * @return the objectives that were missed, empty when all were met
+   */
+  static List<String> check(final Map<String, SamplerStats> stats, final Properties objectives) {
+    List<String> breaches = new ArrayList<>();
+    SortedMap<String, String> sorted = new TreeMap<>();
+    objectives.stringPropertyNames().forEach(key -> sorted.put(key, objectives.getProperty(key).trim()));
+    for (Map.Entry<String, String> objective : sorted.entrySet()) {
+      String key = objective.getKey();
+      int dot = key.lastIndexOf(".p");
+      if (dot <= 0) {
+        throw new IllegalArgumentException("Objective " + key + " is not named <label>.p<percentile>");
+      }
+      String label = key.substring(0, dot);
+      double percent = Double.parseDouble(key.substring(dot + 2));
+      long limit = Long.parseLong(objective.getValue());
+      SamplerStats sampler = stats.get(label);
+      String result;
+      if (sampler == null || sampler.getCount() == 0) {
+        result = key + " no samples";
+        breaches.add(result);
+      } else {
+        long actual = sampler.percentile(percent);
+        result = String.format("%s %d ms, limit %d ms (%d samples)", key, actual, limit, sampler.getCount());
+        if (actual > limit) {
+          breaches.add(result);
+        }
+      }
+      System.out.println((breaches.contains(result) ? "FAIL " : "OK   ") + result);
+    }
+    return breaches;
+  }
+}
@@ -0,0 +1,74 @@
+package com.amazonaws.dpri.jmeter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.SortedMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JtlSloCheckTest {
+
+  private static final String HEADER = "timeStamp,elapsed,label,responseCode,responseMessage,threadName,dataType,"
+      + "success,failureMessage,bytes,sentBytes,grpThreads,allThreads,URL,Latency,IdleTime,Connect";
+
+  @TempDir
+  private Path results;
+
+  private static String sample(final long timeStamp, final long elapsed, final String label, final boolean success,
+      final String failureMessage) {
+    return timeStamp + "," + elapsed + "," + label + ",200,OK,Thread Group 1-1,text," + success + ","
+        + failureMessage + ",100,50,1,1,http://localhost:8080/api/fruits,1,0,0\n";
+  }
+
+  private SortedMap<String, SamplerStats> write(final String... samples) throws IOException {
+    Files.writeString(results.resolve("fruit-api-jmeter.csv"), HEADER + "\n" + String.join("", samples),
+        StandardCharsets.UTF_8);
+    return JtlSummary.read(results);
+  }
+
+  @Test
+  public void shouldComputePercentilesAndThroughputPerLabel() throws IOException {
+    StringBuilder samples = new StringBuilder();
+    for (int i = 1; i <= 100; i++) {
+      samples.append(sample(1000 + i * 10, i, "get", true, ""));
+    }
+    samples.append(sample(1000, 5, "list", false, "\"Test failed: code expected to equal /\n200, got 500\""));
+    SortedMap<String, SamplerStats> stats = write(samples.toString());
+
+    assertThat(stats).containsOnlyKeys("get", "list");
+    SamplerStats get = stats.get("get");
+    assertThat(get.getCount()).isEqualTo(100);
+    assertThat(get.getErrors()).isZero();
+    assertThat(get.percentile(50)).isEqualTo(50);
+    assertThat(get.percentile(95)).isEqualTo(95);
+    assertThat(get.percentile(99)).isEqualTo(99);
+    assertThat(get.percentile(100)).isEqualTo(100);
+    // 100 samples from 1010 to 2100
+    assertThat(get.getThroughput()).isCloseTo(100 / 1.09, offset(0.01));
+    assertThat(stats.get("list").getErrors()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldReportMissedAndMissingObjectives() throws IOException {
+    SortedMap<String, SamplerStats> stats = write(
+        sample(1000, 100, "get", true, ""),
+        sample(1000, 900, "get", true, ""),
+        sample(1000, 50, "seed", true, ""));
+    Properties objectives = new Properties();
+    objectives.setProperty("get.p50", "200");
+    objectives.setProperty("get.p99", "500");
+    objectives.setProperty("delete.p95", "400");
+
+    List<String> breaches = JtlSloCheck.check(stats, objectives);
+
+    assertThat(breaches).containsExactly("delete.p95 no samples", "get.p99 900 ms, limit 500 ms (2 samples)");
+  }
+}
@@ -0,0 +1,152 @@
+package com.amazonaws.dpri.jmeter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Per-sampler statistics of JMeter results saved as CSV with a header line,
+ * the format the jmeter-maven-plugin writes to target/jmeter/results.
+ */
+public final class JtlSummary {
+
+  private JtlSummary() {
+  }
+
+  /**
+   * Summarize every CSV result file of a directory, or a single file.
+   * @param results directory or file
+   * @return statistics by sampler label, in label order
+   * @throws IOException when a file cannot be read or is not a CSV result file
+   */
+  public static SortedMap<String, SamplerStats> read(final Path results) throws IOException {
+    List<Path> files;
+    if (Files.isDirectory(results)) {
+      try (Stream<Path> list = Files.list(results)) {
+        files = list.filter(file -> file.getFileName().toString().endsWith(".csv")).sorted().collect(Collectors.toList());
+      }
+    } else {
+      files = List.of(results);
+    }
+    if (files.isEmpty()) {
+      throw new IOException("No CSV result file in " + results);
+    }
+    Map<String, Samples> samples = new HashMap<>();
+    for (Path file : files) {
+      read(file, samples);
+    }
+    SortedMap<String, SamplerStats> stats = new TreeMap<>();
+    samples.forEach((label, s) -> stats.put(label, s.toStats(label)));
+    return stats;
+  }
+
+  private static void read(final Path file, final Map<String, Samples> samples) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String header = reader.readLine();
+      List<String> columns = header == null ? List.of() : Arrays.asList(header.split(","));
+      int timeStamp = columns.indexOf("timeStamp");
+      int elapsed = columns.indexOf("elapsed");
+      int label = columns.indexOf("label");
+      int success = columns.indexOf("success");
+      if (timeStamp < 0 || elapsed < 0 || label < 0 || success < 0) {
+        throw new IOException(file + " has no timeStamp, elapsed, label and success columns");
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        List<String> fields = split(line, reader);
+        if (fields.size() < columns.size()) {
+          continue;
+        }
+        samples.computeIfAbsent(fields.get(label), l -> new Samples()).add(
+            Long.parseLong(fields.get(timeStamp)),
+            Long.parseLong(fields.get(elapsed)),
+            Boolean.parseBoolean(fields.get(success)));
+      }
+    }
+  }
+
+  /**
+   * Split a CSV record, reading more lines while a quoted field spans them.
+   */
+  static List<String> split(final String line, final BufferedReader reader) throws IOException {
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    String current = line;
+    int i = 0;
+    while (true) {
+      if (i == current.length()) {
+        if (!quoted) {
+          break;
+        }
+        String next = reader.readLine();
+        if (next == null) {
+          break;
+        }
+        field.append('\n');
+        current = next;
+        i = 0;
+        continue;
+      }
+      char c = current.charAt(i++);
+      if (quoted) {
+        if (c != '"') {
+          field.append(c);
+        } else if (i < current.length() && current.charAt(i) == '"') {
+          field.append('"');
+          i++;
+        } else {
+          quoted = false;
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  /**
+   * Samples of one label as they are read.
+   */
+  private static final class Samples {
+    private long[] elapsed = new long[64];
+    private int count;
+    private int errors;
+    private long first = Long.MAX_VALUE;
+    private long last = Long.MIN_VALUE;
+
+    void add(final long timeStamp, final long millis, final boolean success) {
+      if (count == elapsed.length) {
+        elapsed = Arrays.copyOf(elapsed, count * 2);
+      }
+      elapsed[count++] = millis;
+      if (!success) {
+        errors++;
+      }
+      // JMeter stamps samples with their start time by default
+      first = Math.min(first, timeStamp);
+      last = Math.max(last, timeStamp + millis);
+    }
+
+    SamplerStats toStats(final String label) {
+      return new SamplerStats(label, errors, Arrays.copyOf(elapsed, count), last - first);
+    }
+  }
+}
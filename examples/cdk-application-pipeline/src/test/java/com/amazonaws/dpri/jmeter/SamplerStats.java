@@ -0,0 +1,84 @@
+package com.amazonaws.dpri.jmeter;
+
+import java.util.Arrays;
+
+/**
+ * Latency percentiles, error count and throughput of the samples of one
+ * sampler label in a JMeter result file.
+ */
+public class SamplerStats {
+  /**
+   * Sampler label.
+   */
+  private final String label;
+
+  /**
+   * Number of samples.
+   */
+  private final int count;
+
+  /**
+   * Number of failed samples.
+   */
+  private final int errors;
+
+  /**
+   * Elapsed times in milliseconds, sorted.
+   */
+  private final long[] elapsed;
+
+  /**
+   * Time from the start of the first sample to the end of the last one, in milliseconds.
+   */
+  private final long spanMillis;
+
+  SamplerStats(final String label, final int errors, final long[] elapsed, final long spanMillis) {
+    this.label = label;
+    this.count = elapsed.length;
+    this.errors = errors;
+    this.elapsed = elapsed.clone();
+    Arrays.sort(this.elapsed);
+    this.spanMillis = spanMillis;
+  }
+
+  /**
+   * @return sampler label
+   */
+  public String getLabel() {
+    return label;
+  }
+
+  /**
+   * @return number of samples
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * @return number of failed samples
+   */
+  public int getErrors() {
+    return errors;
+  }
+
+  /**
+   * Nearest-rank percentile of the elapsed times.
+   * @param percent percentile between 0 and 100
+   * @return elapsed time in milliseconds that percent of the samples did not exceed
+   */
+  public long percentile(final double percent) {
+    if (count == 0) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(percent / 100 * count);
+    return elapsed[Math.max(0, Math.min(count, rank) - 1)];
+  }
+
+  /**
+   * @return samples per second over the time this sampler ran
+   */
+  public double getThroughput() {
+    return spanMillis == 0 ? count : count * 1000.0 / spanMillis;
+  }
+}